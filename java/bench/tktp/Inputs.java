@@ -0,0 +1,50 @@
+package tktp;
+
+import java.util.Random;
+
+/**
+ * The bivariate distributions the benchmarks run on. Each shape stresses a different part of the search.
+ */
+public enum Inputs {
+    /**
+     * Independent x and y: tau near zero, so the search eliminates most of the observations
+     */
+    RANDOM,
+
+    /**
+     * x and y drawn from ten values each: long tie lists at every stage, and many forward swap candidates
+     */
+    TIES,
+
+    /**
+     * y is x plus a little noise: tau near one, and a short search through a nearly concordant matrix
+     */
+    MONOTONE;
+
+    private static final long SEED = 20141212L;
+
+    /**
+     * Returns {x, y} with n observations of this shape. The same shape and n always give the same data.
+     */
+    public double[][] generate(int n) {
+        Random random = new Random(SEED + 31L * ordinal() + n);
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            switch (this) {
+                case TIES:
+                    x[i] = random.nextInt(10);
+                    y[i] = random.nextInt(10);
+                    break;
+                case MONOTONE:
+                    x[i] = random.nextGaussian();
+                    y[i] = x[i] + 0.05 * random.nextGaussian();
+                    break;
+                default:
+                    x[i] = random.nextGaussian();
+                    y[i] = random.nextGaussian();
+            }
+        }
+        return new double[][]{x, y};
+    }
+}
@@ -0,0 +1,97 @@
+package tktp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The kernels of one FastBCS2 stage, each measured on its own against a matrix at the top stage: construction, tie
+ * list selection, the forward swap test and the column sum updates.
+ * <p>
+ * The column sum benchmark subtracts a column and adds it back, so the matrix is the same before and after every
+ * invocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KernelBenchmark {
+
+    @Param({"1024", "4096"})
+    public int n;
+
+    @Param({"RANDOM", "TIES"})
+    public Inputs shape;
+
+    @Param({"DENSE", "PACKED", "IMPLICIT"})
+    public ConcordanceStorage storage;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private double[] x;
+    private double[] y;
+    private ConcordanceMatrixFBCS2 matrix;
+    private int[] ties;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        double[][] xy = shape.generate(n);
+        x = xy[0];
+        y = xy[1];
+        matrix = ConcordanceMatrixFBCS2.create(x, y, parallel, storage);
+        matrix.initColumnSums(KendallCounts.of(x, y));
+        ties = new int[n];
+    }
+
+    @Benchmark
+    public ConcordanceMatrixFBCS2 create() {
+        return ConcordanceMatrixFBCS2.create(x, y, parallel, storage);
+    }
+
+    @Benchmark
+    public int tieList() {
+        return matrix.tieList(n - 1, ties);
+    }
+
+    @Benchmark
+    public Vector<Integer> tieListBoxed() {
+        return matrix.tieList(n - 1);
+    }
+
+    @Benchmark
+    public int[] cumulativeSums() {
+        return matrix.cumulativeSums(n - 1, n / 2, n - 1);
+    }
+
+    @Benchmark
+    public boolean dominates() {
+        return matrix.dominates(n / 2, n - 1);
+    }
+
+    @Benchmark
+    public double columnSumUpdate() {
+        int column = matrix.piVal(n - 1);
+        matrix.subtractFromColSums(n - 1, column);
+        return matrix.addToColSums(n - 1, column);
+    }
+
+    @Benchmark
+    public double matrixSum() {
+        return matrix.matrixSum(n - 1);
+    }
+}
@@ -0,0 +1,60 @@
+package tktp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end searches: FastBCS against FastBCS2, sequential and parallel, from the raw observations to the ordering.
+ * Every invocation builds its own concordance matrix, as callers of getPi do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+    @Param({"256", "1024", "4096"})
+    public int n;
+
+    @Param({"RANDOM", "TIES", "MONOTONE"})
+    public Inputs shape;
+
+    private double[] x;
+    private double[] y;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        double[][] xy = shape.generate(n);
+        x = xy[0];
+        y = xy[1];
+    }
+
+    @Benchmark
+    public int[] fastBCS() {
+        return FastBCS.getPi(x, y);
+    }
+
+    @Benchmark
+    public ConcordanceMatrixFBCS2 fastBCS2Sequential() {
+        return FastBCS2.getPi(x, y, false);
+    }
+
+    @Benchmark
+    public ConcordanceMatrixFBCS2 fastBCS2Parallel() {
+        return FastBCS2.getPi(x, y, true);
+    }
+}
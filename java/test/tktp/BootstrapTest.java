@@ -0,0 +1,121 @@
+package tktp;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * Checks the resampled view of a concordance matrix against a full search of the resampled values, and Bootstrap
+ * against bands computed from FastBCS2.getPi on each resample drawn with the same seed, with any number of workers and
+ * any storage of the base matrix. Run with "make test".
+ */
+public final class BootstrapTest {
+
+    public static void main(String[] a) {
+        Random random = new Random(22);
+        int n = 100;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = random.nextInt(40);
+            y[i] = i < 40 ? x[i] + random.nextInt(5) : random.nextInt(40);
+        }
+        x[3] = Double.NaN;
+
+        views(x, y, new SplittableRandom(3));
+
+        final int replicates = 60;
+        final double level = 0.9;
+        double[][] expected = bands(x, y, replicates, level, 5);
+        check(expected[0][n - 1] <= expected[1][n - 1] && expected[1][n - 1] > 0, "the band of the last stage");
+
+        for (ConcordanceStorage storage : ConcordanceStorage.values()) {
+            for (int parallelism : new int[]{1, 3}) {
+                try (Bootstrap bootstrap = new Bootstrap(parallelism, storage)) {
+                    Bootstrap.Bands bands = bootstrap.run(x, y, replicates, level, 5);
+                    String what = storage + ", " + parallelism + " workers";
+                    check(bands.replicates() == replicates, what + ": the replicates");
+                    check(Arrays.equals(bands.lower(), expected[0]), what + ": the lower band");
+                    check(Arrays.equals(bands.upper(), expected[1]), what + ": the upper band");
+                    check(Arrays.equals(bands.observed().tauPath(), FastBCS2.getPi(x, y, false).tauPath),
+                            what + ": the observed tau path");
+                }
+            }
+        }
+        System.out.println("BootstrapTest passed");
+    }
+
+    // Resamples, with repeated observations, searched through a view of the base matrix of each storage
+    private static void views(double[] x, double[] y, SplittableRandom random) {
+        final int n = x.length;
+        int[] rx = Ranks.of(x);
+        int[] ry = Ranks.of(y);
+        for (ConcordanceStorage storage : ConcordanceStorage.values()) {
+            ConcordanceStore base = ConcordanceMatrixFBCS2.create(x, y, false, storage).store();
+            for (int t = 0; t < 10; t++) {
+                int[] index = new int[n];
+                double[] xs = new double[n];
+                double[] ys = new double[n];
+                int[] rxs = new int[n];
+                int[] rys = new int[n];
+                for (int i = 0; i < n; i++) {
+                    index[i] = random.nextInt(n);
+                    xs[i] = x[index[i]];
+                    ys[i] = y[index[i]];
+                    rxs[i] = rx[index[i]];
+                    rys[i] = ry[index[i]];
+                }
+                ConcordanceMatrixFBCS2 cm = new FastBCS2().search(
+                        ConcordanceMatrixFBCS2.create(new ResampledConcordanceStore(base, index), false),
+                        KendallCounts.of(rxs, rys));
+                ConcordanceMatrixFBCS2 expected = FastBCS2.getPi(xs, ys, false);
+                check(Arrays.equals(cm.pi(), expected.pi()) && Arrays.equals(cm.tauPath, expected.tauPath),
+                        storage + ": resample " + t);
+            }
+        }
+    }
+
+    // The lower and upper percentiles of each stage over the searches of each resample
+    private static double[][] bands(double[] x, double[] y, int replicates, double level, long seed) {
+        final int n = x.length;
+        SplittableRandom seeds = new SplittableRandom(seed);
+        double[][] paths = new double[replicates][];
+        for (int b = 0; b < replicates; b++) {
+            SplittableRandom random = seeds.split();
+            double[] xs = new double[n];
+            double[] ys = new double[n];
+            for (int i = 0; i < n; i++) {
+                int j = random.nextInt(n);
+                xs[i] = x[j];
+                ys[i] = y[j];
+            }
+            paths[b] = FastBCS2.getPi(xs, ys, false).tauPath;
+        }
+
+        double alpha = (1 - level) / 2;
+        double[][] bands = new double[2][n];
+        for (int k = 0; k < n; k++) {
+            double[] values = new double[replicates];
+            int count = 0;
+            for (double[] path : paths) {
+                if (!Double.isNaN(path[k])) values[count++] = path[k];
+            }
+            Arrays.sort(values, 0, count);
+            bands[0][k] = percentile(values, count, alpha);
+            bands[1][k] = percentile(values, count, 1 - alpha);
+        }
+        return bands;
+    }
+
+    private static double percentile(double[] sorted, int count, double p) {
+        if (count == 0) return Double.NaN;
+        double h = (count - 1) * p;
+        int lo = (int) h;
+        int hi = Math.min(lo + 1, count - 1);
+        return sorted[lo] + (h - lo) * (sorted[hi] - sorted[lo]);
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) throw new AssertionError(what);
+    }
+}
@@ -0,0 +1,86 @@
+package tktp;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Checks ColumnLoader on CSV files whose capacity estimate, taken from the length of the first line, runs short, and
+ * on a binary column file with a corrupt header.
+ * Run with "make test".
+ */
+public final class ColumnLoaderTest {
+
+    public static void main(String[] a) throws Exception {
+        Path dir = Files.createTempDirectory("tktp-loader");
+        try {
+            rowsShorterThanHeader(dir);
+            rowsShorterThanFirstRow(dir);
+            overflowingHeader(dir);
+            System.out.println("ColumnLoaderTest passed");
+        } finally {
+            try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+                for (Path f : (Iterable<Path>) files::iterator) Files.delete(f);
+            }
+            Files.delete(dir);
+        }
+    }
+
+    // A long header followed by many short rows
+    private static void rowsShorterThanHeader(Path dir) throws Exception {
+        StringBuilder csv = new StringBuilder("a_rather_long_name_for_x,an_even_longer_name_for_the_response_y\n");
+        for (int i = 0; i < 1000; i++) csv.append(i % 10).append(',').append(9 - i % 10).append('\n');
+
+        ColumnTable t = load(dir.resolve("header.csv"), csv.toString());
+        check(t.columns() == 2 && t.rows() == 1000, "1000 rows of 2 columns, got " + t.rows() + " of " + t.columns());
+        check(t.name(1).equals("an_even_longer_name_for_the_response_y"), "the header names the columns");
+        for (int i = 0; i < 1000; i++) {
+            check(t.column(0)[i] == i % 10 && t.column(1)[i] == 9 - i % 10, "row " + i + " is read back");
+        }
+    }
+
+    // No header, and a first row much longer than the rows after it
+    private static void rowsShorterThanFirstRow(Path dir) throws Exception {
+        StringBuilder csv = new StringBuilder("1.00000000000001,2.00000000000002,3.00000000000003\n");
+        for (int i = 0; i < 500; i++) csv.append("1,2,3\n");
+
+        ColumnTable t = load(dir.resolve("rows.csv"), csv.toString());
+        check(t.rows() == 501, "501 rows, got " + t.rows());
+        double[] expected = new double[501];
+        Arrays.fill(expected, 3);
+        expected[0] = 3.00000000000003;
+        check(Arrays.equals(t.column(2), expected), "the last column is read back");
+    }
+
+    // A binary header whose columns * rows * 8 wraps around to a negative number of bytes
+    private static void overflowingHeader(Path dir) throws Exception {
+        Path file = dir.resolve("columns.bin");
+        ColumnLoader.writeBinary(file, new ColumnTable(new String[]{"x"}, new double[][]{{1, 2, 3}}));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(1 << 30).putInt(0).putLong(1L << 30).flip();
+            channel.write(header, 8);
+        }
+
+        try {
+            ColumnLoader.load(file);
+            throw new AssertionError("a header claiming 2^60 cells is rejected");
+        } catch (IllegalArgumentException e) {
+            check(e.getMessage().endsWith("is truncated or corrupt"), "the header is reported as corrupt");
+        }
+    }
+
+    private static ColumnTable load(Path file, String contents) throws Exception {
+        Files.write(file, contents.getBytes(StandardCharsets.UTF_8));
+        return ColumnLoader.load(file);
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) throw new AssertionError(what);
+    }
+}
@@ -0,0 +1,55 @@
+package tktp;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks the minimum and tie list of a ColumnSumTree against a scan of the sums, as the sums are changed in ranges
+ * and one at a time. Run with "make test".
+ */
+public final class ColumnSumTreeTest {
+
+    public static void main(String[] a) {
+        Random random = new Random(6);
+        for (int t = 0; t < 200; t++) {
+            int n = 1 + random.nextInt(t % 10 == 0 ? 1000 : 70);
+            int[] sums = new int[n];
+            for (int j = 0; j < n; j++) sums[j] = random.nextInt(7) - 3;
+            ColumnSumTree tree = new ColumnSumTree(sums);
+            int[] ties = new int[n];
+
+            for (int step = 0; step < 50; step++) {
+                // Sums only take a few values, so that there are many ties
+                if (random.nextBoolean()) {
+                    int lo = random.nextInt(n);
+                    int hi = lo + random.nextInt(n - lo);
+                    for (int j = lo; j <= hi; j++) sums[j] += random.nextInt(3) - 1;
+                    tree.invalidate(lo, hi);
+                } else {
+                    int j = random.nextInt(n);
+                    sums[j] = random.nextInt(7) - 3;
+                    tree.invalidate(j);
+                }
+
+                int index = random.nextInt(n);
+                int min = Integer.MAX_VALUE;
+                for (int j = 0; j <= index; j++) min = Math.min(min, sums[j]);
+                int[] expected = new int[index + 1];
+                int count = 0;
+                for (int j = 0; j <= index; j++) {
+                    if (sums[j] == min) expected[count++] = j;
+                }
+
+                check(tree.min(index) == min, "test " + t + ", step " + step + ": the minimum of 0 .. " + index);
+                int found = tree.ties(index, ties);
+                check(Arrays.equals(Arrays.copyOf(ties, found), Arrays.copyOf(expected, count)),
+                        "test " + t + ", step " + step + ": the ties among 0 .. " + index);
+            }
+        }
+        System.out.println("ColumnSumTreeTest passed");
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) throw new AssertionError(what);
+    }
+}
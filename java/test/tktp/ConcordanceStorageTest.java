@@ -0,0 +1,65 @@
+package tktp;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks that every storage, searched sequentially or in parallel, gives the permutation and tau path of a sequential
+ * search on dense cells: through getPi, and through engines whose workspaces are reused across inputs of changing
+ * sizes, built from values or from ranks. Run with "make test".
+ */
+public final class ConcordanceStorageTest {
+
+    public static void main(String[] a) {
+        // Small enough that the kernels of these small matrices are split, so that the parallel paths are taken
+        System.setProperty("tktp.parallel.threshold", "64");
+
+        FastBCS2[] engines = new FastBCS2[2 * ConcordanceStorage.values().length];
+        String[] names = new String[engines.length];
+        int e = 0;
+        for (ConcordanceStorage storage : ConcordanceStorage.values()) {
+            for (boolean parallelize : new boolean[]{false, true}) {
+                names[e] = storage + (parallelize ? " parallel engine" : " engine");
+                engines[e++] = new FastBCS2(parallelize, storage);
+            }
+        }
+
+        Random random = new Random(5);
+        for (int t = 0; t < 200; t++) {
+            int n = 1 + random.nextInt(t % 10 == 0 ? 400 : 90);
+            double[] x = new double[n];
+            double[] y = new double[n];
+            for (int i = 0; i < n; i++) {
+                x[i] = random.nextInt(n / 2 + 1);
+                y[i] = random.nextInt(12) == 0 ? Double.NaN : x[i] + random.nextInt(n / 4 + 1);
+            }
+            ConcordanceMatrixFBCS2 expected = FastBCS2.getPi(x, y, false, ConcordanceStorage.DENSE);
+
+            for (ConcordanceStorage storage : ConcordanceStorage.values()) {
+                for (boolean parallelize : new boolean[]{false, true}) {
+                    check(t, storage + (parallelize ? " parallel getPi" : " getPi"),
+                            FastBCS2.getPi(x, y, parallelize, storage), expected);
+                }
+            }
+
+            int[] rx = Ranks.of(x);
+            int[] ry = Ranks.of(y);
+            for (e = 0; e < engines.length; e++) {
+                FastBCS2 engine = engines[e];
+                String name = names[e];
+                switch (t % 3) {
+                    case 0: check(t, name + " values", engine.search(x, y), expected); break;
+                    case 1: check(t, name + " values and ranks", engine.search(x, y, rx, ry), expected); break;
+                    default: check(t, name + " ranks", engine.search(rx, ry), expected);
+                }
+            }
+        }
+        System.out.println("ConcordanceStorageTest passed");
+    }
+
+    private static void check(int t, String what, ConcordanceMatrixFBCS2 cm, ConcordanceMatrixFBCS2 expected) {
+        if (!Arrays.equals(cm.pi(), expected.pi()) || !Arrays.equals(cm.tauPath, expected.tauPath)) {
+            throw new AssertionError("test " + t + ", n=" + expected.size() + ": " + what);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package tktp;
+
+import java.util.Random;
+
+/**
+ * Checks ConcordanceMatrixFBCS2.dominates against the comparison of the two arrays returned by cumulativeSums that it
+ * replaced, on random permutations of random matrices. Run with "make test".
+ */
+public final class DominanceTest {
+
+    public static void main(String[] a) {
+        Random random = new Random(10);
+        for (int t = 0; t < 300; t++) {
+            int n = 2 + random.nextInt(70);
+            double[] x = new double[n];
+            double[] y = new double[n];
+            for (int i = 0; i < n; i++) {
+                x[i] = random.nextInt(n / 3 + 1);
+                y[i] = random.nextInt(15) == 0 ? Double.NaN : random.nextInt(n / 3 + 1);
+            }
+            ConcordanceStorage storage = t % 2 == 0 ? ConcordanceStorage.DENSE : ConcordanceStorage.PACKED;
+            ConcordanceMatrixFBCS2 cm = ConcordanceMatrixFBCS2.create(x, y, false, storage);
+
+            int[] pi = new int[n];
+            for (int i = 0; i < n; i++) pi[i] = i;
+            for (int i = n - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int tmp = pi[i];
+                pi[i] = pi[j];
+                pi[j] = tmp;
+            }
+            cm.pi(pi);
+
+            for (int q = 0; q < 50; q++) {
+                int stage = random.nextInt(n - 1);
+                int k = stage + 1 + random.nextInt(n - stage - 1);
+                check(cm.dominates(stage, k) == dominates(cm, stage, k),
+                        "test " + t + ": whether column " + k + " dominates column " + stage);
+            }
+        }
+        System.out.println("DominanceTest passed");
+    }
+
+    // The stagewise dominance test of the original search loop
+    private static boolean dominates(ConcordanceMatrixFBCS2 cm, int stage, int k) {
+        int[] qValuesi = cm.cumulativeSums(stage, stage, k);
+        int[] qValuesk = cm.cumulativeSums(k, stage, k);
+
+        boolean allGreaterThanOrEqual = true;
+        boolean anyGreaterThan = false;
+        for (int z = 0; z < k - stage; z++) {
+            if (qValuesi[z] > qValuesk[z]) allGreaterThanOrEqual = false;
+            if (qValuesk[z] > qValuesi[z]) anyGreaterThan = true;
+        }
+        return allGreaterThanOrEqual && anyGreaterThan;
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) throw new AssertionError(what);
+    }
+}
@@ -0,0 +1,53 @@
+package tktp;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks that FastBCS finds the same permutation with dense and packed cells, on values so small that the product of
+ * two differences underflows to 0 and on heavily tied values. Run with "make test".
+ */
+public final class FastBCSStorageTest {
+
+    public static void main(String[] a) {
+        Random random = new Random(42);
+        for (int seed = 0; seed < 300; seed++) {
+            int n = 8 + random.nextInt(40);
+            double[] x = new double[n];
+            double[] y = new double[n];
+            for (int i = 0; i < n; i++) {
+                x[i] = random.nextInt(n / 2);
+                y[i] = random.nextInt(n / 2);
+            }
+            tiedValues(seed, x, y);
+            tinyValues(seed, x, y);
+        }
+        System.out.println("FastBCSStorageTest passed");
+    }
+
+    private static void tiedValues(int seed, double[] x, double[] y) {
+        int[] dense = FastBCS.getPi(x, y, ConcordanceStorage.DENSE);
+        int[] packed = FastBCS.getPi(x, y, ConcordanceStorage.PACKED);
+        check(Arrays.equals(dense, packed), "seed " + seed + ": DENSE and PACKED agree on tied values");
+    }
+
+    // Scaling by 1e-170 keeps every order, so the permutation must not change
+    private static void tinyValues(int seed, double[] x, double[] y) {
+        double[] tx = new double[x.length];
+        double[] ty = new double[y.length];
+        for (int i = 0; i < x.length; i++) {
+            tx[i] = x[i] * 1e-170;
+            ty[i] = y[i] * 1e-170;
+        }
+
+        int[] expected = FastBCS.getPi(x, y, ConcordanceStorage.DENSE);
+        int[] dense = FastBCS.getPi(tx, ty, ConcordanceStorage.DENSE);
+        int[] packed = FastBCS.getPi(tx, ty, ConcordanceStorage.PACKED);
+        check(Arrays.equals(dense, packed), "seed " + seed + ": DENSE and PACKED agree on tiny values");
+        check(Arrays.equals(dense, expected), "seed " + seed + ": tiny values give the permutation of unscaled ones");
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) throw new AssertionError(what);
+    }
+}
@@ -0,0 +1,79 @@
+package tktp;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks IncrementalTauPath against a full search of all the observations after every append, for batches of growing
+ * size, tied values and NaNs, and after every point update. Run with "make test".
+ */
+public final class IncrementalTauPathTest {
+
+    public static void main(String[] a) {
+        appends(new Random(14));
+        updates(new Random(16));
+        System.out.println("IncrementalTauPathTest passed");
+    }
+
+    private static void appends(Random random) {
+        for (boolean parallelize : new boolean[]{false, true}) {
+            int n = 700;
+            double[] x = new double[n];
+            double[] y = new double[n];
+            for (int i = 0; i < n; i++) {
+                y[i] = random.nextInt(40);
+                x[i] = i % 3 == 0 ? random.nextInt(40) : y[i] + random.nextInt(5);
+            }
+            x[17] = Double.NaN;
+            y[300] = Double.NaN;
+
+            IncrementalTauPath incremental = new IncrementalTauPath(parallelize);
+            // Batches of 1, 3, 7, ... observations, so that the store both fills its spare room and outgrows it
+            for (int at = 0, step = 1; at < n; step = 2 * step + 1) {
+                int m = Math.min(step, n - at);
+                ConcordanceMatrixFBCS2 cm = incremental.append(Arrays.copyOfRange(x, at, at + m),
+                        Arrays.copyOfRange(y, at, at + m));
+                at += m;
+                check(incremental.size() == at, "the size after appending " + at + " observations");
+                check(cm, FastBCS2.getPi(Arrays.copyOf(x, at), Arrays.copyOf(y, at), false),
+                        "after appending " + at + " observations");
+            }
+        }
+    }
+
+    // Updates that keep a value, that move it, and that make it NaN or bring it back
+    private static void updates(Random random) {
+        int n = 500;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            y[i] = random.nextInt(40);
+            x[i] = i % 3 == 0 ? random.nextInt(40) : y[i] + random.nextInt(5);
+        }
+
+        IncrementalTauPath incremental = new IncrementalTauPath(false);
+        incremental.append(x.clone(), y.clone());
+        for (int u = 0; u < 80; u++) {
+            int i = random.nextInt(n);
+            x[i] = u % 5 == 0 ? x[i] : u % 7 == 0 ? Double.NaN : random.nextInt(40);
+            y[i] = u % 3 == 0 ? y[i] : random.nextInt(40);
+            check(incremental.update(i, x[i], y[i]), FastBCS2.getPi(x.clone(), y.clone(), false),
+                    "after update " + u + " of observation " + i);
+        }
+
+        try {
+            incremental.update(n, 0, 0);
+            throw new AssertionError("an update past the last observation is rejected");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+    }
+
+    private static void check(ConcordanceMatrixFBCS2 cm, ConcordanceMatrixFBCS2 expected, String what) {
+        check(Arrays.equals(cm.pi(), expected.pi()) && Arrays.equals(cm.tauPath, expected.tauPath), what);
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) throw new AssertionError(what);
+    }
+}
@@ -0,0 +1,72 @@
+package tktp;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks KendallCounts against column sums computed cell by cell, on tied, signed-zero, NaN and tiny values, for all
+ * observations and for subsets of them. Run with "make test".
+ */
+public final class KendallCountsTest {
+
+    public static void main(String[] a) {
+        Random random = new Random(3);
+        for (int t = 0; t < 500; t++) {
+            int n = random.nextInt(80);
+            double[] x = new double[n];
+            double[] y = new double[n];
+            for (int i = 0; i < n; i++) {
+                x[i] = value(random, t);
+                y[i] = value(random, t);
+            }
+            allObservations(t, x, y);
+            subset(t, x, y, random);
+        }
+        System.out.println("KendallCountsTest passed");
+    }
+
+    // Few distinct values, so that ties are common, with some NaNs, negative zeros and values too small to multiply
+    private static double value(Random random, int t) {
+        switch (random.nextInt(10)) {
+            case 0: return Double.NaN;
+            case 1: return -0.0;
+            default: return (random.nextInt(6) - 2) * (t % 2 == 0 ? 1 : 1e-170);
+        }
+    }
+
+    private static void allObservations(int t, double[] x, double[] y) {
+        int[] counts = KendallCounts.of(x, y);
+        for (int j = 0; j < x.length; j++) {
+            int sum = 0;
+            for (int i = 0; i < x.length; i++) sum += DenseConcordanceStore.cell(x, y, i, j);
+            check(counts[j] == sum, "test " + t + ": the count of observation " + j);
+        }
+    }
+
+    // The counts within a random subset of the observations, in a random order
+    private static void subset(int t, double[] x, double[] y, Random random) {
+        final int n = x.length;
+        int[] observations = new int[n];
+        for (int i = 0; i < n; i++) observations[i] = i;
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = observations[i];
+            observations[i] = observations[j];
+            observations[j] = tmp;
+        }
+        int count = n == 0 ? 0 : random.nextInt(n + 1);
+
+        int[] counts = new int[n];
+        KendallCounts.of(Ranks.of(x), Ranks.of(y), observations, count, counts);
+        for (int k = 0; k < count; k++) {
+            int sum = 0;
+            for (int l = 0; l < count; l++) sum += DenseConcordanceStore.cell(x, y, observations[l], observations[k]);
+            check(counts[k] == sum, "test " + t + ": the count of observation " + observations[k] + " in "
+                    + Arrays.toString(Arrays.copyOf(observations, count)));
+        }
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) throw new AssertionError(what);
+    }
+}
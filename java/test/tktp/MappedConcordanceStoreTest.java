@@ -0,0 +1,59 @@
+package tktp;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks that a concordance matrix written to a file and reopened read-only gives the same search as one built in
+ * memory, and that searching it leaves the file untouched. Run with "make test".
+ */
+public final class MappedConcordanceStoreTest {
+
+    public static void main(String[] a) throws Exception {
+        Path dir = Files.createTempDirectory("tktp-mapped");
+        try {
+            Random random = new Random(7);
+            for (int n : new int[]{1, 7, 64, 65, 300}) {
+                double[] x = new double[n];
+                double[] y = new double[n];
+                for (int i = 0; i < n; i++) {
+                    x[i] = random.nextInt(5);
+                    y[i] = random.nextGaussian();
+                }
+                reopen(dir.resolve("m" + n + ".cm"), x, y);
+            }
+            System.out.println("MappedConcordanceStoreTest passed");
+        } finally {
+            try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+                for (Path f : (Iterable<Path>) files::iterator) Files.delete(f);
+            }
+            Files.delete(dir);
+        }
+    }
+
+    private static void reopen(Path file, double[] x, double[] y) throws Exception {
+        ConcordanceMatrixFBCS2 expected = FastBCS2.getPi(x, y, false);
+        ConcordanceMatrixFBCS2 created = FastBCS2.getPi(ConcordanceMatrixFBCS2.create(x, y, false, file));
+        check(Arrays.equals(created.pi(), expected.pi()), "n=" + x.length + ": the search of a new file");
+
+        byte[] written = Files.readAllBytes(file);
+        file.toFile().setReadOnly();
+        ConcordanceMatrixFBCS2 reopened = FastBCS2.getPi(ConcordanceMatrixFBCS2.open(file, false));
+        check(Arrays.equals(reopened.pi(), expected.pi()) && Arrays.equals(reopened.tauPath, expected.tauPath),
+                "n=" + x.length + ": the search of a reopened file");
+        check(Arrays.equals(Files.readAllBytes(file), written), "n=" + x.length + ": the search leaves the file as is");
+
+        try {
+            reopened.store().set(0, 0, 1);
+            throw new AssertionError("the cells of a reopened file cannot be set");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) throw new AssertionError(what);
+    }
+}
@@ -0,0 +1,107 @@
+package tktp;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * Checks PermutationTest against a sequential test that searches each permutation of y with FastBCS2.getPi, drawing
+ * the same permutations from the same seed, with any number of workers and any storage. Run with "make test".
+ */
+public final class PermutationTestTest {
+
+    public static void main(String[] a) {
+        Random random = new Random(21);
+        int n = 120;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = random.nextGaussian();
+            y[i] = i < 40 ? x[i] + 0.1 * random.nextGaussian() : random.nextInt(20);
+        }
+        y[7] = Double.NaN;
+
+        for (int exceedances : new int[]{1, 10}) {
+            Expected expected = expected(x, y, 300, 42, exceedances);
+            check(expected.replicates > exceedances && expected.replicates <= 300, "the sequential test stops early");
+
+            for (ConcordanceStorage storage : ConcordanceStorage.values()) {
+                for (int parallelism : new int[]{1, 3}) {
+                    try (PermutationTest test = new PermutationTest(parallelism, storage, exceedances)) {
+                        PermutationTest.Result result = test.run(x, y, 300, 42);
+                        String what = storage + ", " + parallelism + " workers, h=" + exceedances;
+                        check(result.replicates() == expected.replicates, what + ": the replicates drawn");
+                        check(Arrays.equals(result.pValues(), expected.pValues), what + ": the p-values");
+                        check(Arrays.equals(result.observed().tauPath(), FastBCS2.getPi(x, y, false).tauPath),
+                                what + ": the observed tau path");
+                    }
+                }
+            }
+        }
+        System.out.println("PermutationTestTest passed");
+    }
+
+    private static final class Expected {
+        double[] pValues;
+        int replicates;
+    }
+
+    // Besag and Clifford's sequential test, one replicate at a time
+    private static Expected expected(double[] x, double[] y, int replicates, long seed, int exceedances) {
+        final int n = x.length;
+        double[] tau = FastBCS2.getPi(x, y, false).tauPath;
+        int[] counts = new int[n];
+        double[] pValues = new double[n];
+        Arrays.fill(pValues, Double.NaN);
+        boolean[] decided = new boolean[n];
+        int undecided = 0;
+        for (int k = 0; k < n; k++) {
+            decided[k] = Double.isNaN(tau[k]);
+            if (!decided[k]) undecided++;
+        }
+
+        SplittableRandom seeds = new SplittableRandom(seed);
+        int drawn = 0;
+        while (drawn < replicates && undecided > 0) {
+            double[] permuted = permute(y, seeds.split());
+            double[] path = FastBCS2.getPi(x, permuted, false).tauPath;
+            drawn++;
+            for (int k = 0; k < n; k++) {
+                if (decided[k] || !(path[k] >= tau[k])) continue;
+                if (++counts[k] == exceedances) {
+                    pValues[k] = (double) exceedances / drawn;
+                    decided[k] = true;
+                    undecided--;
+                }
+            }
+        }
+        for (int k = 0; k < n; k++) {
+            if (!decided[k]) pValues[k] = (1.0 + counts[k]) / (1.0 + drawn);
+        }
+
+        Expected expected = new Expected();
+        expected.pValues = pValues;
+        expected.replicates = drawn;
+        return expected;
+    }
+
+    // The Fisher-Yates shuffle of PermutationTest
+    private static double[] permute(double[] y, SplittableRandom random) {
+        final int n = y.length;
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+        double[] permuted = new double[n];
+        for (int i = 0; i < n; i++) permuted[i] = y[order[i]];
+        return permuted;
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) throw new AssertionError(what);
+    }
+}
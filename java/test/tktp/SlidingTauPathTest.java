@@ -0,0 +1,42 @@
+package tktp;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks SlidingTauPath against a full search of the window after every observation, while the window fills up and
+ * after it wraps around, with tied values and NaNs. Run with "make test".
+ */
+public final class SlidingTauPathTest {
+
+    public static void main(String[] a) {
+        Random random = new Random(15);
+        for (int window : new int[]{1, 2, 150}) {
+            int n = 600;
+            double[] x = new double[n];
+            double[] y = new double[n];
+            for (int i = 0; i < n; i++) {
+                y[i] = random.nextInt(30);
+                x[i] = i % 4 == 0 ? random.nextInt(30) : y[i] + random.nextInt(6);
+            }
+            x[200] = Double.NaN;
+            y[201] = Double.NaN;
+
+            SlidingTauPath sliding = new SlidingTauPath(window, false);
+            for (int i = 0; i < n; i++) {
+                ConcordanceMatrixFBCS2 cm = sliding.add(x[i], y[i]);
+                int from = Math.max(0, i + 1 - window);
+                check(sliding.size() == i + 1 - from, "window " + window + ": the size after " + (i + 1));
+                ConcordanceMatrixFBCS2 expected = FastBCS2.getPi(Arrays.copyOfRange(x, from, i + 1),
+                        Arrays.copyOfRange(y, from, i + 1), false);
+                check(Arrays.equals(cm.pi(), expected.pi()) && Arrays.equals(cm.tauPath, expected.tauPath),
+                        "window " + window + ": the window ending at observation " + i);
+            }
+        }
+        System.out.println("SlidingTauPathTest passed");
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) throw new AssertionError(what);
+    }
+}
@@ -0,0 +1,119 @@
+package tktp;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Checks the hits, misses and evictions of TauPathCache in memory, that results written to a directory are read back
+ * by another cache and that damaged files are searched again, and that every result is that of FastBCS2.getPi. Run
+ * with "make test".
+ */
+public final class TauPathCacheTest {
+
+    public static void main(String[] a) throws Exception {
+        SplittableRandom random = new SplittableRandom(25);
+        int n = 200;
+        double[][] xs = new double[6][n];
+        double[][] ys = new double[6][n];
+        for (int k = 0; k < xs.length; k++) {
+            for (int i = 0; i < n; i++) {
+                xs[k][i] = random.nextInt(50);
+                ys[k][i] = xs[k][i] + random.nextGaussian();
+            }
+        }
+
+        memory(xs, ys);
+        Path dir = Files.createTempDirectory("tktp-cache");
+        try {
+            disk(dir, xs, ys);
+            System.out.println("TauPathCacheTest passed");
+        } finally {
+            try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+                for (Path f : (Iterable<Path>) files::iterator) Files.delete(f);
+            }
+            Files.delete(dir);
+        }
+    }
+
+    // A cache with room for three results, least recently used first out
+    private static void memory(double[][] xs, double[][] ys) {
+        final int n = xs[0].length;
+        final long bytes = 96 + 12L * n;
+        TauPathCache cache = new TauPathCache(3 * bytes);
+        for (int k = 0; k < 5; k++) check(cache.get(xs[k], ys[k]), xs[k], ys[k], "search " + k);
+        counts(cache, 0, 0, 5, 2, "after five searches");
+        check(cache.size() == 3 && cache.bytes() == 3 * bytes, "three results are held");
+
+        // Held, eldest first: 2, 3, 4. Using 3 leaves 2, 4, 3, and 0 evicts 2
+        check(cache.get(xs[3], ys[3]), xs[3], ys[3], "a hit on 3");
+        check(cache.get(xs[0], ys[0]), xs[0], ys[0], "0 again");
+        counts(cache, 1, 0, 6, 3, "after 0 is searched again");
+        // Held: 4, 3, 0. The same contents in other arrays hit, then 2 evicts 4 and 4 evicts 0
+        check(cache.get(xs[3].clone(), ys[3].clone()), xs[3], ys[3], "a hit on a copy of 3");
+        check(cache.get(xs[2], ys[2]), xs[2], ys[2], "2 again");
+        check(cache.get(xs[4], ys[4]), xs[4], ys[4], "4 again");
+        counts(cache, 2, 0, 8, 5, "after 2 and 4 are searched again");
+
+        // A pair with x and y swapped is a different pair
+        check(cache.get(ys[0], xs[0]), ys[0], xs[0], "0 swapped");
+        counts(cache, 2, 0, 9, 6, "after 0 is searched swapped");
+    }
+
+    private static void disk(Path dir, double[][] xs, double[][] ys) throws Exception {
+        // A cache that holds nothing in memory still writes every result
+        TauPathCache writer = new TauPathCache(0, dir);
+        for (int k = 0; k < 3; k++) writer.get(xs[k], ys[k]);
+        counts(writer, 0, 0, 3, 0, "writing");
+        check(writer.size() == 0 && files(dir) == 3, "three files and nothing in memory");
+
+        TauPathCache reader = new TauPathCache(1 << 20, dir);
+        check(reader.get(xs[0], ys[0]), xs[0], ys[0], "0 from its file");
+        check(reader.get(xs[1], ys[1]), xs[1], ys[1], "1 from its file");
+        check(reader.get(xs[0], ys[0]), xs[0], ys[0], "0 from memory");
+        counts(reader, 1, 2, 0, 0, "reading back");
+
+        // A stopping rule is part of the key
+        TauPathCache stopping = new TauPathCache(1 << 20, dir, false, ConcordanceStorage.PACKED,
+                StoppingRule.NONE.stage(xs[0].length / 2));
+        stopping.get(xs[0], ys[0]);
+        counts(stopping, 0, 0, 1, 0, "with a stopping rule");
+        check(files(dir) == 4, "a file of its own for the stopping rule");
+
+        // Damaged files are misses, and are replaced by the results of the searches
+        try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+            for (Path f : (Iterable<Path>) files::iterator) Files.write(f, new byte[]{1, 2, 3});
+        }
+        TauPathCache damaged = new TauPathCache(1 << 20, dir);
+        for (int k = 0; k < 3; k++) {
+            check(damaged.get(xs[k], ys[k]), xs[k], ys[k], "search " + k + " over a damaged file");
+        }
+        counts(damaged, 0, 0, 3, 0, "with damaged files");
+        TauPathCache repaired = new TauPathCache(1 << 20, dir);
+        for (int k = 0; k < 3; k++) check(repaired.get(xs[k], ys[k]), xs[k], ys[k], "the replaced file of " + k);
+        counts(repaired, 0, 3, 0, 0, "after the files are replaced");
+    }
+
+    private static long files(Path dir) throws Exception {
+        try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+
+    private static void counts(TauPathCache cache, long hits, long diskHits, long misses, long evictions,
+                               String what) {
+        check(cache.hits() == hits && cache.diskHits() == diskHits && cache.misses() == misses
+                && cache.evictions() == evictions, what + ": " + cache);
+    }
+
+    private static void check(TauPath path, double[] x, double[] y, String what) {
+        ConcordanceMatrixFBCS2 cm = FastBCS2.getPi(x, y, false);
+        check(Arrays.equals(path.pi(), cm.pi()) && Arrays.equals(path.tauPath(), Arrays.copyOf(cm.tauPath, cm.size())),
+                what);
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) throw new AssertionError(what);
+    }
+}
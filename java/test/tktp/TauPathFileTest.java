@@ -0,0 +1,99 @@
+package tktp;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Checks that tau paths written by BinaryTauPathSink, with double and float taus, read back from TauPathFile with
+ * their names and hashes, including an empty path and a record larger than the sink's buffer, and that a truncated
+ * file is rejected. Run with "make test".
+ */
+public final class TauPathFileTest {
+
+    // A name that is not ASCII, to check that names are stored as UTF-8
+    private static final String X = "x\u00e9";
+
+    public static void main(String[] a) throws Exception {
+        Path dir = Files.createTempDirectory("tktp-results");
+        try {
+            List<TauPath> paths = paths(new SplittableRandom(24));
+            for (boolean floatTaus : new boolean[]{false, true}) {
+                roundTrip(dir.resolve("r" + floatTaus + ".tkp"), paths, floatTaus);
+            }
+            truncated(dir.resolve("rfalse.tkp"), dir.resolve("truncated.tkp"));
+            System.out.println("TauPathFileTest passed");
+        } finally {
+            try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+                for (Path f : (Iterable<Path>) files::iterator) Files.delete(f);
+            }
+            Files.delete(dir);
+        }
+    }
+
+    private static List<TauPath> paths(SplittableRandom random) {
+        List<TauPath> paths = new ArrayList<>();
+        for (int n : new int[]{1, 2, 50, 300, 2500, 7}) {
+            double[] x = new double[n];
+            double[] y = new double[n];
+            for (int i = 0; i < n; i++) {
+                x[i] = random.nextGaussian();
+                y[i] = x[i] + random.nextGaussian();
+            }
+            paths.add(TauPath.of(FastBCS2.getPi(x, y, false)));
+        }
+        paths.add(new TauPath(new int[0], new double[0]));
+
+        // Large jumps between neighbouring indices, in a record that crosses the sink's buffer
+        int[] pi = new int[40000];
+        double[] tau = new double[pi.length];
+        for (int i = 0; i < pi.length; i++) {
+            pi[i] = i % 2 == 0 ? i : pi.length * 1000 - i;
+            tau[i] = random.nextDouble();
+        }
+        paths.add(new TauPath(pi, tau));
+        return paths;
+    }
+
+    private static void roundTrip(Path file, List<TauPath> paths, boolean floatTaus) throws Exception {
+        try (BinaryTauPathSink sink = new BinaryTauPathSink(file, floatTaus)) {
+            for (int k = 0; k < paths.size(); k++) sink.write(X + k, 100 + k, "y" + k, -k, paths.get(k));
+        }
+
+        String what = floatTaus ? "float taus" : "double taus";
+        try (TauPathFile results = TauPathFile.open(file)) {
+            check(results.count() == paths.size() && results.floatTaus() == floatTaus, what + ": the header");
+            // Backwards, so that no record is read only because the one before it was
+            for (int k = paths.size() - 1; k >= 0; k--) {
+                TauPathFile.Record record = results.get(k);
+                check(record.x().equals(X + k) && record.y().equals("y" + k), what + ": the names of " + k);
+                check(record.xHash() == 100 + k && record.yHash() == -k, what + ": the hashes of " + k);
+                check(Arrays.equals(record.path().pi(), paths.get(k).pi()), what + ": the indices of " + k);
+                double[] expected = paths.get(k).tauPath();
+                if (floatTaus) {
+                    for (int i = 0; i < expected.length; i++) expected[i] = (float) expected[i];
+                }
+                check(Arrays.equals(record.path().tauPath(), expected), what + ": the taus of " + k);
+            }
+            check(results.find(X + 3, "y3") == 3 && results.find("x3", "y3") == -1, what + ": find by name");
+            check(results.find(105, -5) == 5 && results.find(1, 1) == -1, what + ": find by hash");
+        }
+    }
+
+    private static void truncated(Path file, Path truncated) throws Exception {
+        Files.write(truncated, Arrays.copyOf(Files.readAllBytes(file), 100));
+        try {
+            TauPathFile.open(truncated).close();
+            throw new AssertionError("a truncated file is rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) throw new AssertionError(what);
+    }
+}
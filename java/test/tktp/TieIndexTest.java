@@ -0,0 +1,78 @@
+package tktp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks TieIndex against a plain list of tie lists per stage, through random records, clears and resets, including
+ * a reset that reuses the arrays of a larger search. Run with "make test".
+ */
+public final class TieIndexTest {
+
+    public static void main(String[] a) {
+        Random random = new Random(8);
+        TieIndex index = new TieIndex();
+        for (int t = 0; t < 100; t++) {
+            int n = 1 + random.nextInt(60);
+            index.reset(n);
+            List<int[]> stages = new ArrayList<>();
+            for (int s = 0; s < n; s++) stages.add(new int[0]);
+            int[] found = new int[n];
+
+            for (int step = 0; step < 200; step++) {
+                int stage = random.nextInt(n);
+                switch (random.nextInt(6)) {
+                    case 0:
+                        index.clear(stage);
+                        stages.set(stage, new int[0]);
+                        break;
+                    case 1:
+                        index.clearFrom(stage);
+                        for (int s = stage; s < n; s++) stages.set(s, new int[0]);
+                        break;
+                    default:
+                        // A tie list holds distinct observations
+                        int[] observations = new int[n];
+                        for (int i = 0; i < n; i++) observations[i] = i;
+                        for (int i = n - 1; i > 0; i--) {
+                            int j = random.nextInt(i + 1);
+                            int tmp = observations[i];
+                            observations[i] = observations[j];
+                            observations[j] = tmp;
+                        }
+                        int count = 1 + random.nextInt(Math.min(n, 5));
+                        index.record(stage, observations, count);
+                        stages.set(stage, Arrays.copyOf(observations, count));
+                }
+
+                for (int q = 0; q < 5; q++) {
+                    int observation = random.nextInt(n);
+                    int above = random.nextInt(n + 1) - 1;
+                    int[] expected = previous(stages, observation, above);
+                    int count = index.previous(observation, above, found);
+                    check(Arrays.equals(Arrays.copyOf(found, count), expected), "test " + t + ", step " + step
+                            + ": the stages above " + above + " at which " + observation + " tied");
+                }
+            }
+        }
+        System.out.println("TieIndexTest passed");
+    }
+
+    // The stages above "stage" whose tie list holds "observation", highest first
+    private static int[] previous(List<int[]> stages, int observation, int stage) {
+        int[] found = new int[stages.size()];
+        int count = 0;
+        for (int s = stages.size() - 1; s > stage; s--) {
+            for (int member : stages.get(s)) {
+                if (member == observation) found[count++] = s;
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) throw new AssertionError(what);
+    }
+}
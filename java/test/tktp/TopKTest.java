@@ -0,0 +1,112 @@
+package tktp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Checks the TopK heap against a sort of every offered pair, with tied and NaN scores offered from several threads,
+ * and PairScreen against the scores of every pair searched one by one. Run with "make test".
+ */
+public final class TopKTest {
+
+    public static void main(String[] a) {
+        heap();
+        screen();
+        System.out.println("TopKTest passed");
+    }
+
+    private static void heap() {
+        Random random = new Random(12);
+        for (int t = 0; t < 200; t++) {
+            int k = 1 + random.nextInt(20);
+            List<PairScreen.Pair> offered = new ArrayList<>();
+            for (int p = random.nextInt(200); p > 0; p--) {
+                double score = random.nextInt(8) == 0 ? Double.NaN : random.nextInt(10) / 10.0;
+                offered.add(new PairScreen.Pair(random.nextInt(50), random.nextInt(50), score, null));
+            }
+
+            TopK top = new TopK(k);
+            IntStream.range(0, offered.size()).parallel().forEach(p -> top.offer(offered.get(p)));
+
+            List<PairScreen.Pair> expected = new ArrayList<>();
+            for (PairScreen.Pair pair : offered) {
+                if (!Double.isNaN(pair.score())) expected.add(pair);
+            }
+            expected.sort(TopK.BEST_FIRST);
+            expected = expected.subList(0, Math.min(k, expected.size()));
+            check(same(top.toList(), expected), "test " + t + ": the best " + k + " of " + offered.size() + " pairs");
+
+            check(!top.admits(Double.NaN), "test " + t + ": a NaN score is never admitted");
+            if (expected.size() == k) {
+                double cutoff = expected.get(k - 1).score();
+                check(top.admits(cutoff) && !top.admits(Math.nextDown(cutoff)), "test " + t + ": the cutoff");
+            } else {
+                check(top.admits(Double.NEGATIVE_INFINITY), "test " + t + ": a heap that is not full admits any score");
+            }
+        }
+    }
+
+    // PairScreen keeps the best pairs of a table with a constant column, whose tau is 0 and whose statistic is NaN
+    private static void screen() {
+        Random random = new Random(13);
+        int n = 80;
+        int p = 23;
+        double[][] table = new double[p][n];
+        for (int v = 0; v < p; v++) {
+            for (int i = 0; i < n; i++) {
+                table[v][i] = v == 5 ? 1.0 : v % 4 == 0 ? random.nextInt(30) : table[0][i] + random.nextGaussian() * v;
+            }
+        }
+        TauPathStatistic above = TauPathStatistic.stagesAbove(0.6);
+        TauPathStatistic statistic = tau -> flat(tau) ? Double.NaN : above.score(tau);
+
+        List<PairScreen.Pair> expected = new ArrayList<>();
+        for (int i = 0; i < p; i++) {
+            for (int j = i + 1; j < p; j++) {
+                ConcordanceMatrixFBCS2 cm = FastBCS2.getPi(table[i], table[j], false);
+                double score = statistic.score(cm.tauPath);
+                check(Double.isNaN(score) == (i == 5 || j == 5), "only the pairs of the constant column score NaN");
+                if (!Double.isNaN(score)) expected.add(new PairScreen.Pair(i, j, score, TauPath.of(cm)));
+            }
+        }
+        expected.sort(TopK.BEST_FIRST);
+
+        for (int parallelism : new int[]{1, 3}) {
+            try (PairScreen screen = new PairScreen(parallelism, ConcordanceStorage.DENSE)) {
+                List<PairScreen.Pair> found = screen.run(table, 25, statistic);
+                check(same(found, expected.subList(0, 25)), parallelism + " workers: the best 25 pairs");
+                for (int q = 0; q < 25; q++) {
+                    check(Arrays.equals(found.get(q).path().tauPath(), expected.get(q).path().tauPath()),
+                            parallelism + " workers: the tau path of pair " + q);
+                }
+            }
+        }
+    }
+
+    // Whether every defined stage of the tau path is 0
+    private static boolean flat(double[] tau) {
+        for (double t : tau) {
+            if (t != 0 && !Double.isNaN(t)) return false;
+        }
+        return true;
+    }
+
+    private static boolean same(List<PairScreen.Pair> found, List<PairScreen.Pair> expected) {
+        if (found.size() != expected.size()) return false;
+        for (int q = 0; q < found.size(); q++) {
+            PairScreen.Pair f = found.get(q);
+            PairScreen.Pair e = expected.get(q);
+            if (f.first() != e.first() || f.second() != e.second() || Double.compare(f.score(), e.score()) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) throw new AssertionError(what);
+    }
+}
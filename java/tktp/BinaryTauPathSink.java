@@ -0,0 +1,157 @@
+package tktp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Writes tau paths to a compact binary file, read back by {@link TauPathFile}.
+ * <p>
+ * The file starts with a 16 byte header: the magic number "TKTPRES1" and an int of flags (bit 0 is set when the
+ * taus are stored as floats). Each tau path is then stored as one record:
+ * <ul>
+ * <li>N, as a varint</li>
+ * <li>the hashes of the contents of x and y, as longs</li>
+ * <li>the names of x and y, each as a varint length and UTF-8 bytes</li>
+ * <li>the byte length of the permutation index as a varint, then the permutation index as the zigzag varint
+ * differences of each index from the one before it (the first from 0)</li>
+ * <li>the tau path, as N floats or doubles</li>
+ * </ul>
+ * A footer, written on {@link #close()}, holds the offset of every record as a long, then the offset of the footer
+ * and the number of records as longs, then the magic number again. All numbers are little-endian.
+ * <p>
+ * Records are encoded into a buffer that is written through a FileChannel whenever it fills up.
+ */
+public final class BinaryTauPathSink implements TauPathSink {
+    static final long MAGIC = 0x3153_4552_5054_4B54L; // "TKTPRES1"
+    static final int HEADER_BYTES = 16;
+    static final int FLOAT_TAUS = 1;
+
+    // The bytes at the end of the file: the footer offset, the record count and the magic number
+    static final int TRAILER_BYTES = 3 * Long.BYTES;
+
+    private final FileChannel channel;
+    private final boolean floatTaus;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+    // The number of bytes written out before the buffer's contents
+    private long written;
+    private long[] offsets = new long[64];
+    private int count;
+
+    /**
+     * Creates "file", replacing any existing file
+     *
+     * @param floatTaus Whether the taus are stored as floats, halving their size, rather than as doubles
+     */
+    public BinaryTauPathSink(Path file, boolean floatTaus) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.floatTaus = floatTaus;
+
+        buffer.putLong(MAGIC).putInt(floatTaus ? FLOAT_TAUS : 0).putInt(0);
+    }
+
+    @Override
+    public void write(String x, String y, TauPath path) throws IOException {
+        write(x, 0L, y, 0L, path);
+    }
+
+    @Override
+    public void write(String x, long xHash, String y, long yHash, TauPath path) throws IOException {
+        final int N = path.size();
+
+        if (count == offsets.length) offsets = Arrays.copyOf(offsets, count * 2);
+        offsets[count++] = written + buffer.position();
+
+        ensure(5 + 2 * Long.BYTES);
+        putVarint(N);
+        buffer.putLong(xHash).putLong(yHash);
+        putName(x);
+        putName(y);
+
+        int piBytes = 0;
+        for (int i = 0, previous = 0; i < N; previous = path.piVal(i++)) {
+            piBytes += varintBytes(zigzag(path.piVal(i) - previous));
+        }
+        ensure(5);
+        putVarint(piBytes);
+        for (int i = 0, previous = 0; i < N; previous = path.piVal(i++)) {
+            ensure(5);
+            putVarint(zigzag(path.piVal(i) - previous));
+        }
+
+        for (int i = 0; i < N; i++) {
+            ensure(Double.BYTES);
+            if (floatTaus) {
+                buffer.putFloat((float) path.tau(i));
+            } else {
+                buffer.putDouble(path.tau(i));
+            }
+        }
+    }
+
+    private void putName(String name) throws IOException {
+        byte[] b = name.getBytes(StandardCharsets.UTF_8);
+        ensure(5);
+        putVarint(b.length);
+        for (int from = 0; from < b.length; ) {
+            ensure(1);
+            int length = Math.min(buffer.remaining(), b.length - from);
+            buffer.put(b, from, length);
+            from += length;
+        }
+    }
+
+    private void putVarint(int v) {
+        while ((v & ~0x7F) != 0) {
+            buffer.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buffer.put((byte) v);
+    }
+
+    static int zigzag(int v) {
+        return (v << 1) ^ (v >> 31);
+    }
+
+    static int varintBytes(int v) {
+        return v == 0 ? 1 : (31 - Integer.numberOfLeadingZeros(v)) / 7 + 1;
+    }
+
+    // Makes room for "bytes" more bytes in the buffer, writing out its contents when it is too full
+    private void ensure(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) drain();
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) written += channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Writes the footer and closes the file. A file that was not closed has no footer and cannot be read.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!channel.isOpen()) return;
+        try {
+            long footer = written + buffer.position();
+            for (int r = 0; r < count; r++) {
+                ensure(Long.BYTES);
+                buffer.putLong(offsets[r]);
+            }
+            ensure(TRAILER_BYTES);
+            buffer.putLong(footer).putLong(count).putLong(MAGIC);
+            drain();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package tktp;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.IntStream;
+
+/**
+ * Computes pointwise bootstrap confidence bands for the tau path of (x, y).
+ * <p>
+ * The concordance matrix of (x, y) is built once. Each replicate draws n observations with replacement and searches
+ * a {@link ResampledConcordanceStore} view of the base matrix, so it needs no O(n^2) construction. Its Kendall counts
+ * come from the resampled ranks of x and y in O(n log n). Replicates run on a dedicated fork/join pool, and each worker
+ * reuses one engine; the observed search runs on an engine of its own, which is dropped once it is done. Each replicate draws from its own {@link SplittableRandom}, split from the seed in replicate
+ * order, so a seed always gives the same bands.
+ * <p>
+ * The band of stage k is the pair of percentiles of the replicates' tau at stage k around the requested coverage,
+ * interpolated linearly between order statistics. The replicate tau paths are held until the end, i.e. replicates * n
+ * doubles.
+ */
+public final class Bootstrap implements AutoCloseable {
+
+    /**
+     * The observed tau path and the lower and upper bounds of each of its stages
+     */
+    public static final class Bands {
+        private final TauPath observed;
+        private final double[] lower;
+        private final double[] upper;
+        private final int replicates;
+
+        Bands(TauPath observed, double[] lower, double[] upper, int replicates) {
+            this.observed = observed;
+            this.lower = lower;
+            this.upper = upper;
+            this.replicates = replicates;
+        }
+
+        public TauPath observed() {
+            return observed;
+        }
+
+        /**
+         * The lower bound of each stage, NaN where no replicate has a tau
+         */
+        public double[] lower() {
+            return lower.clone();
+        }
+
+        /**
+         * The upper bound of each stage, NaN where no replicate has a tau
+         */
+        public double[] upper() {
+            return upper.clone();
+        }
+
+        public int replicates() {
+            return replicates;
+        }
+    }
+
+    private final ConcordanceStorage storage;
+    private final ForkJoinPool pool;
+    private final ThreadLocal<FastBCS2> engines;
+
+    /**
+     * Creates a bootstrap over a dense base matrix, with one worker per available processor
+     */
+    public Bootstrap() {
+        this(Runtime.getRuntime().availableProcessors(), ConcordanceStorage.DENSE);
+    }
+
+    /**
+     * @param parallelism The number of replicates run at once
+     * @param storage     How the cells of the base matrix are stored
+     */
+    public Bootstrap(int parallelism, ConcordanceStorage storage) {
+        this.storage = storage;
+        this.pool = new ForkJoinPool(parallelism);
+        this.engines = ThreadLocal.withInitial(() -> new FastBCS2(false, storage));
+    }
+
+    /**
+     * Runs "replicates" resamples of (x, y)
+     *
+     * @param level The coverage of the bands, e.g. 0.95
+     * @param seed  Seeds the resamples; the same seed gives the same bands
+     */
+    public Bands run(double[] x, double[] y, int replicates, double level, long seed) {
+        if (x.length != y.length) throw new IllegalArgumentException("x and y must have the same length");
+        if (!(level > 0 && level < 1)) throw new IllegalArgumentException("level must be between 0 and 1");
+        final int N = x.length;
+        final int[] rx = Ranks.of(x);
+        final int[] ry = Ranks.of(y);
+
+        final ConcordanceStore base = ConcordanceMatrixFBCS2.create(x, y, false, storage).store();
+        // The engines belong to the pool's workers; the caller's thread gets one for this search only
+        final TauPath observed = TauPath.of(new FastBCS2(false, storage).search(ConcordanceMatrixFBCS2.create(base,
+                false), KendallCounts.of(rx, ry)));
+
+        final SplittableRandom seeds = new SplittableRandom(seed);
+        final SplittableRandom[] streams = new SplittableRandom[replicates];
+        for (int b = 0; b < replicates; b++) streams[b] = seeds.split();
+
+        final double[][] paths = new double[replicates][];
+        pool.submit(() -> IntStream.range(0, replicates).parallel()
+                .forEach(b -> paths[b] = replicate(base, rx, ry, streams[b]))).join();
+
+        // Percentiles of each stage across the replicates
+        final double alpha = (1 - level) / 2;
+        final double[] lower = new double[N];
+        final double[] upper = new double[N];
+        final double[] values = new double[replicates];
+        for (int k = 0; k < N; k++) {
+            int count = 0;
+            for (int b = 0; b < replicates; b++) {
+                if (!Double.isNaN(paths[b][k])) values[count++] = paths[b][k];
+            }
+            Arrays.sort(values, 0, count);
+            lower[k] = percentile(values, count, alpha);
+            upper[k] = percentile(values, count, 1 - alpha);
+        }
+
+        return new Bands(observed, lower, upper, replicates);
+    }
+
+    /**
+     * Searches one resample of the base observations, drawn with "random"
+     */
+    private double[] replicate(ConcordanceStore base, int[] rx, int[] ry, SplittableRandom random) {
+        final int N = rx.length;
+        int[] index = new int[N];
+        int[] resampledX = new int[N];
+        int[] resampledY = new int[N];
+        for (int i = 0; i < N; i++) {
+            index[i] = random.nextInt(N);
+            resampledX[i] = rx[index[i]];
+            resampledY[i] = ry[index[i]];
+        }
+
+        ConcordanceMatrixFBCS2 cm = ConcordanceMatrixFBCS2.create(new ResampledConcordanceStore(base, index), false);
+        // A thread outside the pool that helps with the replicates it is waiting for gets no engine to keep
+        FastBCS2 engine = ForkJoinTask.getPool() == pool ? engines.get() : new FastBCS2(false, storage);
+        return engine.search(cm, KendallCounts.of(resampledX, resampledY)).tauPath;
+    }
+
+    /**
+     * The p-th percentile of sorted[0] .. sorted[count-1], interpolating linearly between order statistics
+     */
+    static double percentile(double[] sorted, int count, double p) {
+        if (count == 0) return Double.NaN;
+        double h = (count - 1) * p;
+        int lo = (int) Math.floor(h);
+        int hi = Math.min(lo + 1, count - 1);
+        return sorted[lo] + (h - lo) * (sorted[hi] - sorted[lo]);
+    }
+
+    /**
+     * Shuts the worker pool down
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,422 @@
+package tktp;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads columns of observations from memory-mapped files straight into primitive arrays.
+ * <p>
+ * Two formats are read:
+ * <ul>
+ * <li>CSV: one row per line, fields separated by commas or tabs, with an optional header row of column names. Empty
+ * fields, NA and NaN are read as NaN.</li>
+ * <li>Binary columns: a 64 byte header (the magic number "TKTPCOL1", the number of columns as an int at offset 8,
+ * the number of rows as a long at offset 16 and the offset of the first column as a long at offset 24), the column
+ * names as UTF-8 strings each preceded by its length as an int, then each column in turn as little-endian doubles.
+ * All numbers are little-endian. {@link #writeBinary(Path, ColumnTable)} writes this format.</li>
+ * </ul>
+ * I/O errors are thrown as {@link UncheckedIOException}s, malformed files as {@link IllegalArgumentException}s.
+ */
+public final class ColumnLoader {
+    static final long MAGIC = 0x314C_4F43_5054_4B54L; // "TKTPCOL1"
+    static final int HEADER_BYTES = 64;
+
+    // The largest number of bytes held by a single mapping
+    static final int MAX_SEGMENT_BYTES = 1 << 30;
+
+    private ColumnLoader() {
+    }
+
+    /**
+     * Reads a binary column file when "file" starts with the binary magic number, and a CSV file otherwise
+     */
+    public static ColumnTable load(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() >= HEADER_BYTES) {
+                ByteBuffer magic = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                channel.read(magic, 0);
+                if (magic.getLong(0) == MAGIC) return binary(file, channel);
+            }
+            return csv(file, channel);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static ColumnTable csv(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return csv(file, channel);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static ColumnTable binary(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return binary(file, channel);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static ColumnTable csv(Path file, FileChannel channel) throws IOException {
+        final long size = channel.size();
+        CsvParser parser = new CsvParser(file, size);
+
+        // A field or line may straddle two segments: the parser carries it over from one to the next
+        for (long position = 0; position < size; position += MAX_SEGMENT_BYTES) {
+            parser.feed(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAX_SEGMENT_BYTES,
+                    size - position)));
+        }
+        return parser.finish();
+    }
+
+    private static ColumnTable binary(Path file, FileChannel channel) throws IOException {
+        final long size = channel.size();
+        if (size < HEADER_BYTES) {
+            throw new IllegalArgumentException(file + " is not a binary column file");
+        }
+
+        MappedByteBuffer header = map(channel, 0, HEADER_BYTES);
+        if (header.getLong(0) != MAGIC) {
+            throw new IllegalArgumentException(file + " is not a binary column file");
+        }
+        int columns = header.getInt(8);
+        long rows = header.getLong(16);
+        long dataOffset = header.getLong(24);
+        // Divided rather than multiplied out, so that no header, however corrupt, can overflow the check
+        if (columns < 0 || rows < 0 || rows > Integer.MAX_VALUE - 8 || dataOffset < HEADER_BYTES || dataOffset > size
+                || rows > 0 && (size - dataOffset) / Double.BYTES / rows < columns) {
+            throw new IllegalArgumentException(file + " is truncated or corrupt");
+        }
+
+        MappedByteBuffer nameBlock = map(channel, HEADER_BYTES, dataOffset - HEADER_BYTES);
+        String[] names = new String[columns];
+        for (int c = 0; c < columns; c++) {
+            if (nameBlock.remaining() < Integer.BYTES) {
+                throw new IllegalArgumentException(file + " is truncated or corrupt");
+            }
+            int length = nameBlock.getInt();
+            if (length < 0 || length > nameBlock.remaining()) {
+                throw new IllegalArgumentException(file + " is truncated or corrupt");
+            }
+            byte[] name = new byte[length];
+            nameBlock.get(name);
+            names[c] = new String(name, StandardCharsets.UTF_8);
+        }
+
+        double[][] values = new double[columns][(int) rows];
+        final int rowsPerSegment = MAX_SEGMENT_BYTES / Double.BYTES;
+        for (int c = 0; c < columns; c++) {
+            long start = dataOffset + c * rows * Double.BYTES;
+            for (int from = 0; from < rows; from += rowsPerSegment) {
+                int count = (int) Math.min(rowsPerSegment, rows - from);
+                DoubleBuffer segment = map(channel, start + (long) from * Double.BYTES, (long) count * Double.BYTES)
+                        .asDoubleBuffer();
+                segment.get(values[c], from, count);
+            }
+        }
+        return new ColumnTable(names, values);
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long length) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * Writes "table" to "file" in the binary column format, replacing any existing file
+     */
+    public static void writeBinary(Path file, ColumnTable table) {
+        final int columns = table.columns();
+        final int rows = table.rows();
+
+        byte[][] names = new byte[columns][];
+        long nameBytes = 0;
+        for (int c = 0; c < columns; c++) {
+            names[c] = table.name(c).getBytes(StandardCharsets.UTF_8);
+            nameBytes += Integer.BYTES + names[c].length;
+        }
+        // The columns start on an 8 byte boundary
+        long dataOffset = (HEADER_BYTES + nameBytes + 7) & ~7L;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            // The buffer holds at least the header and the names, so that they are written in one go
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(1 << 16, dataOffset)).order(ByteOrder.LITTLE_ENDIAN);
+
+            buffer.putLong(MAGIC).putInt(columns).putInt(0).putLong(rows).putLong(dataOffset);
+            buffer.position(HEADER_BYTES);
+            for (byte[] name : names) buffer.putInt(name.length).put(name);
+            buffer.position((int) dataOffset);
+
+            for (int c = 0; c < columns; c++) {
+                double[] column = table.column(c);
+                for (int i = 0; i < rows; i++) {
+                    if (buffer.remaining() < Double.BYTES) drain(channel, buffer);
+                    buffer.putDouble(column[i]);
+                }
+            }
+            drain(channel, buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Writes out the buffer's contents, leaving it empty
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * ================================================================================================
+     * Number parsing
+     * ================================================================================================
+     */
+    // The powers of ten that are exactly representable as doubles
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // The most significant digits of a decimal mantissa that always fit in a double's 53 bits
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    /**
+     * Parses the ASCII bytes b[from .. to-1] as a double, giving the same value as {@link Double#parseDouble}.
+     * <p>
+     * A plain decimal of up to 15 significant digits, with a power of ten no larger than 10^22, is parsed without
+     * allocating: its mantissa and power of ten are both exact doubles, so one multiplication or division rounds the
+     * value correctly. Anything else (more digits, large exponents, Infinity, hexadecimal) is handed to
+     * {@link Double#parseDouble}.
+     *
+     * @throws NumberFormatException When the bytes are not a number, NA or NaN
+     */
+    static double parse(byte[] b, int from, int to) {
+        int i = from;
+        int end = to;
+        while (i < end && b[i] == ' ') i++;
+        while (end > i && b[end - 1] == ' ') end--;
+        if (i == end) return Double.NaN;
+
+        final int start = i;
+        boolean negative = false;
+        if (b[i] == '-' || b[i] == '+') {
+            negative = b[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean any = false;
+        for (; i < end && isDigit(b[i]); i++) {
+            any = true;
+            if (digits > 0 || b[i] != '0') {
+                if (++digits > MAX_EXACT_DIGITS) return parseSlowly(b, start, end);
+                mantissa = mantissa * 10 + (b[i] - '0');
+            }
+        }
+        if (i < end && b[i] == '.') {
+            for (i++; i < end && isDigit(b[i]); i++) {
+                any = true;
+                if (digits > 0 || b[i] != '0') {
+                    if (++digits > MAX_EXACT_DIGITS) return parseSlowly(b, start, end);
+                    mantissa = mantissa * 10 + (b[i] - '0');
+                }
+                exponent--;
+            }
+        }
+        if (!any) return parseSlowly(b, start, end);
+
+        if (i < end && (b[i] == 'e' || b[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (b[i] == '-' || b[i] == '+')) {
+                negativeExponent = b[i] == '-';
+                i++;
+            }
+            int e = 0;
+            int exponentStart = i;
+            for (; i < end && isDigit(b[i]) && e < 10_000; i++) e = e * 10 + (b[i] - '0');
+            if (i == exponentStart) return parseSlowly(b, start, end);
+            exponent += negativeExponent ? -e : e;
+        }
+        if (i != end) return parseSlowly(b, start, end);
+
+        double value;
+        if (mantissa == 0) {
+            value = 0.0;
+        } else if (exponent >= 0 && exponent < POW10.length) {
+            value = mantissa * POW10[exponent];
+        } else if (exponent < 0 && -exponent < POW10.length) {
+            value = mantissa / POW10[-exponent];
+        } else {
+            return parseSlowly(b, start, end);
+        }
+        return negative ? -value : value;
+    }
+
+    private static boolean isDigit(byte c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static double parseSlowly(byte[] b, int from, int to) {
+        String s = new String(b, from, to - from, StandardCharsets.ISO_8859_1);
+        if (s.equalsIgnoreCase("NA") || s.equalsIgnoreCase("NaN")) return Double.NaN;
+        return Double.parseDouble(s);
+    }
+
+    /**
+     * Parses CSV bytes fed to it one mapped segment at a time. Each field is gathered into a small buffer and parsed
+     * into its column as soon as it ends; only the first line is kept as strings, until it is known whether it is a
+     * header.
+     */
+    private static final class CsvParser {
+        private final Path file;
+        private final long fileSize;
+
+        private byte[] field = new byte[64];
+        private int fieldLength;
+        private boolean quoted;
+
+        private long line = 1;
+        private long lineBytes;
+        private boolean lineEmpty = true;
+
+        // The first line, until the number of columns is known
+        private List<String> first = new ArrayList<>();
+        private String[] names;
+
+        private double[][] values;
+        private int rows;
+        private int column;
+
+        CsvParser(Path file, long fileSize) {
+            this.file = file;
+            this.fileSize = fileSize;
+        }
+
+        void feed(ByteBuffer segment) {
+            for (int i = segment.position(), limit = segment.limit(); i < limit; i++) {
+                byte c = segment.get(i);
+                lineBytes++;
+                if (c == '"') {
+                    quoted = !quoted;
+                    lineEmpty = false;
+                } else if (c == '\n') {
+                    endLine();
+                } else if ((c == ',' || c == '\t') && !quoted) {
+                    endField();
+                    lineEmpty = false;
+                } else if (c != '\r') {
+                    if (fieldLength == field.length) field = Arrays.copyOf(field, field.length * 2);
+                    field[fieldLength++] = c;
+                    lineEmpty = false;
+                }
+            }
+        }
+
+        private void endField() {
+            if (first != null) {
+                first.add(new String(field, 0, fieldLength, StandardCharsets.UTF_8).trim());
+            } else {
+                if (column == values.length) {
+                    throw new IllegalArgumentException(file + ": line " + line + " has more than " + values.length
+                            + " fields");
+                }
+                // The capacity estimated from the first line runs short when the rows are shorter than that line
+                if (column == 0 && rows == values[0].length) grow();
+                try {
+                    values[column][rows] = parse(field, 0, fieldLength);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException(file + ": line " + line + ", field " + (column + 1)
+                            + " is not a number: " + new String(field, 0, fieldLength, StandardCharsets.UTF_8));
+                }
+                column++;
+            }
+            fieldLength = 0;
+        }
+
+        private void endLine() {
+            if (!lineEmpty) {
+                endField();
+                if (first != null) {
+                    firstLine();
+                } else if (column != values.length) {
+                    throw new IllegalArgumentException(file + ": line " + line + " has " + column + " fields, not "
+                            + values.length);
+                } else {
+                    rows++;
+                }
+            }
+            column = 0;
+            quoted = false;
+            lineEmpty = true;
+            lineBytes = 0;
+            line++;
+        }
+
+        // Decides whether the first line is a header, and sizes the columns from the length of that line
+        private void firstLine() {
+            final int columns = first.size();
+            long estimate = Math.max(16, Math.min(Integer.MAX_VALUE - 8, fileSize / Math.max(1, lineBytes) + 1));
+            values = new double[columns][(int) estimate];
+
+            boolean header = false;
+            for (String f : first) {
+                try {
+                    byte[] b = f.getBytes(StandardCharsets.ISO_8859_1);
+                    parse(b, 0, b.length);
+                } catch (NumberFormatException e) {
+                    header = true;
+                    break;
+                }
+            }
+
+            // A UTF-8 byte order mark is not part of the first name
+            if (header && first.get(0).startsWith("\uFEFF")) first.set(0, first.get(0).substring(1));
+
+            names = new String[columns];
+            for (int c = 0; c < columns; c++) {
+                names[c] = header ? first.get(c) : Integer.toString(c);
+                if (!header) {
+                    byte[] b = first.get(c).getBytes(StandardCharsets.ISO_8859_1);
+                    values[c][0] = parse(b, 0, b.length);
+                }
+            }
+            if (!header) rows = 1;
+            first = null;
+        }
+
+        private void grow() {
+            int capacity = (int) Math.min(Integer.MAX_VALUE - 8, rows + (rows >> 1) + 16L);
+            for (int c = 0; c < values.length; c++) values[c] = Arrays.copyOf(values[c], capacity);
+        }
+
+        ColumnTable finish() {
+            // The last line need not end with a newline
+            if (!lineEmpty) endLine();
+            if (values == null) return new ColumnTable(new String[0], new double[0][]);
+
+            for (int c = 0; c < values.length; c++) {
+                if (values[c].length != rows) values[c] = Arrays.copyOf(values[c], rows);
+            }
+            return new ColumnTable(names, values);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package tktp;
+
+/**
+ * A min segment tree over the column sums of a concordance matrix, used to find the columns tied for the minimum sum
+ * without scanning every column.
+ * <p>
+ * The leaves are the column sum array itself, which stays owned by the matrix and is updated by its column sum
+ * kernels as before. The kernels only report the range of columns they touched; the internal nodes over that range
+ * are rebuilt lazily on the next query, in O(range + log n). A query then costs O(log n) for the minimum plus an
+ * O(log n) descent for each column at the minimum.
+ */
+final class ColumnSumTree {
+    private final int[] sums;
+    private final int leaves;
+    private final int[] nodes;
+
+    // The range of columns changed since the last rebuild, empty when dirtyLo > dirtyHi
+    private int dirtyLo;
+    private int dirtyHi;
+
+    /**
+     * @param sums The column sums, indexed by (permuted) column
+     */
+    ColumnSumTree(int[] sums) {
+        this.sums = sums;
+        this.leaves = Integer.highestOneBit(Math.max(1, sums.length - 1)) << 1;
+        this.nodes = new int[leaves];
+        invalidate(0, sums.length - 1);
+    }
+
+    /**
+     * Records that the sums of columns lo .. hi, inclusive, have changed
+     */
+    void invalidate(int lo, int hi) {
+        if (lo > hi) return;
+        if (dirtyLo > dirtyHi) {
+            dirtyLo = lo;
+            dirtyHi = hi;
+        } else {
+            dirtyLo = Math.min(dirtyLo, lo);
+            dirtyHi = Math.max(dirtyHi, hi);
+        }
+    }
+
+    /**
+     * Records that the sum of column j has changed
+     */
+    void invalidate(int j) {
+        invalidate(j, j);
+    }
+
+    /**
+     * The minimum column sum among columns 0 .. index, inclusive
+     */
+    int min(int index) {
+        rebuild();
+        int min = Integer.MAX_VALUE;
+        for (int l = leaves, r = leaves + index + 1; l < r; l >>= 1, r >>= 1) {
+            if ((l & 1) != 0) min = Math.min(min, value(l++));
+            if ((r & 1) != 0) min = Math.min(min, value(--r));
+        }
+        return min;
+    }
+
+    /**
+     * Collects, in ascending order, the columns among 0 .. index whose sum is the minimum of that range
+     *
+     * @param index The last column to consider
+     * @param ties  Receives the columns; must hold at least index + 1 entries
+     * @return The number of columns written to ties
+     */
+    int ties(int index, int[] ties) {
+        int min = min(index);
+        return collect(1, 0, leaves - 1, index, min, ties, 0);
+    }
+
+    private int collect(int node, int lo, int hi, int index, int min, int[] ties, int count) {
+        if (lo > index || value(node) > min) return count;
+        if (node >= leaves) {
+            ties[count++] = node - leaves;
+            return count;
+        }
+        int mid = (lo + hi) >>> 1;
+        count = collect(2 * node, lo, mid, index, min, ties, count);
+        return collect(2 * node + 1, mid + 1, hi, index, min, ties, count);
+    }
+
+    private int value(int node) {
+        if (node < leaves) return nodes[node];
+        int j = node - leaves;
+        return j < sums.length ? sums[j] : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Recomputes the internal nodes above the dirty range, level by level
+     */
+    private void rebuild() {
+        if (dirtyLo > dirtyHi) return;
+        for (int l = (leaves + dirtyLo) >> 1, r = (leaves + dirtyHi) >> 1; l >= 1; l >>= 1, r >>= 1) {
+            for (int node = l; node <= r; node++) {
+                nodes[node] = Math.min(value(2 * node), value(2 * node + 1));
+            }
+        }
+        dirtyLo = 1;
+        dirtyHi = 0;
+    }
+}
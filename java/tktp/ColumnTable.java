@@ -0,0 +1,70 @@
+package tktp;
+
+/**
+ * Named columns of equal length, as read by {@link ColumnLoader}. The columns are held as primitive arrays and are
+ * not copied: they may be passed straight to a search.
+ */
+public final class ColumnTable {
+    private final String[] names;
+    private final double[][] columns;
+
+    /**
+     * @param names   The name of each column
+     * @param columns columns[c] holds the observations of column c
+     */
+    public ColumnTable(String[] names, double[][] columns) {
+        if (names.length != columns.length) {
+            throw new IllegalArgumentException(names.length + " names given for " + columns.length + " columns");
+        }
+        for (int c = 1; c < columns.length; c++) {
+            if (columns[c].length != columns[0].length) {
+                throw new IllegalArgumentException("column " + c + " does not have the same length as column 0");
+            }
+        }
+        this.names = names.clone();
+        this.columns = columns;
+    }
+
+    /**
+     * The number of columns
+     */
+    public int columns() {
+        return columns.length;
+    }
+
+    /**
+     * The number of observations in each column
+     */
+    public int rows() {
+        return columns.length == 0 ? 0 : columns[0].length;
+    }
+
+    /**
+     * The observations of column c
+     */
+    public double[] column(int c) {
+        return columns[c];
+    }
+
+    public String name(int c) {
+        return names[c];
+    }
+
+    /**
+     * Finds a column by name, or else by its index
+     *
+     * @throws IllegalArgumentException When no column has that name and it is not a valid index
+     */
+    public int indexOf(String column) {
+        for (int c = 0; c < names.length; c++) {
+            if (names[c].equals(column)) return c;
+        }
+        try {
+            int c = Integer.parseInt(column);
+            if (c >= 0 && c < columns.length) return c;
+        } catch (NumberFormatException e) {
+            // neither a name nor an index
+        }
+        throw new IllegalArgumentException("no column " + column);
+    }
+}
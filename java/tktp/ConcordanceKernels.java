@@ -0,0 +1,111 @@
+package tktp;
+
+/**
+ * The inner loops of matrix construction and column sum maintenance.
+ * <p>
+ * This class holds the scalar loops. When the jdk.incubator.vector module is present at run time (java --add-modules
+ * jdk.incubator.vector) and the optional {@code VectorKernels} class was built (make vector), {@link #INSTANCE} is
+ * a subclass computing the same values with SIMD lanes. The class is loaded reflectively, so nothing else depends on
+ * the incubator module, and any failure to load it falls back to the scalar loops. Setting the system property
+ * tktp.vector to false forces the scalar loops.
+ */
+class ConcordanceKernels {
+    static final ConcordanceKernels INSTANCE = load();
+
+    private static ConcordanceKernels load() {
+        if (Boolean.parseBoolean(System.getProperty("tktp.vector", "true"))) {
+            try {
+                return (ConcordanceKernels) Class.forName("tktp.VectorKernels").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // The module or the class is missing; use the scalar loops
+            }
+        }
+        return new ConcordanceKernels();
+    }
+
+    /**
+     * The name of the kernels in use
+     */
+    String name() {
+        return "scalar";
+    }
+
+    /**
+     * Writes the cells (i, from) .. (i, to-1) of the bivariate distribution (x, y) to dest[offset] ..
+     *
+     * @see DenseConcordanceStore#cell(double[], double[], int, int)
+     */
+    void signs(double[] x, double[] y, int i, int from, int to, short[] dest, int offset) {
+        for (int j = from; j < to; j++) {
+            dest[offset + j - from] = DenseConcordanceStore.cell(x, y, i, j);
+        }
+    }
+
+    /**
+     * Writes the bitplane words of row i of the bivariate distribution (x, y) of n observations: bit (j mod 64) of
+     * concordant[offset + j / 64] (resp. discordant) is set when cell (i,j) is concordant (resp. discordant)
+     */
+    void signWords(double[] x, double[] y, int i, int n, long[] concordant, long[] discordant, int offset) {
+        final int words = ConcordancePlanes.wordsFor(n);
+        for (int w = 0; w < words; w++) {
+            long c = 0L;
+            long d = 0L;
+            final int lo = w << 6;
+            final int hi = Math.min(lo + 64, n);
+            for (int j = lo; j < hi; j++) {
+                int cell = DenseConcordanceStore.cell(x, y, i, j);
+                if (cell > 0) c |= 1L << j;
+                else if (cell < 0) d |= 1L << j;
+            }
+            concordant[offset + w] = c;
+            discordant[offset + w] = d;
+        }
+    }
+
+    /**
+     * Writes the cells (i, from) .. (i, to-1) of the observations ranked rx and ry to dest[offset] ..
+     *
+     * @see ImplicitConcordanceStore#cell(int[], int[], int, int)
+     */
+    void signs(int[] rx, int[] ry, int i, int from, int to, short[] dest, int offset) {
+        for (int j = from; j < to; j++) {
+            dest[offset + j - from] = ImplicitConcordanceStore.cell(rx, ry, i, j);
+        }
+    }
+
+    /**
+     * Writes the bitplane words of row i of the observations ranked rx and ry, as
+     * {@link #signWords(double[], double[], int, int, long[], long[], int)} does for their values
+     */
+    void signWords(int[] rx, int[] ry, int i, int n, long[] concordant, long[] discordant, int offset) {
+        final int words = ConcordancePlanes.wordsFor(n);
+        for (int w = 0; w < words; w++) {
+            long c = 0L;
+            long d = 0L;
+            final int lo = w << 6;
+            final int hi = Math.min(lo + 64, n);
+            for (int j = lo; j < hi; j++) {
+                int cell = ImplicitConcordanceStore.cell(rx, ry, i, j);
+                if (cell > 0) c |= 1L << j;
+                else if (cell < 0) d |= 1L << j;
+            }
+            concordant[offset + w] = c;
+            discordant[offset + w] = d;
+        }
+    }
+
+    /**
+     * Adds column[j] to sums[j] for j in lo .. hi, inclusive, or subtracts it when "subtract" is set
+     *
+     * @return The total of sums[lo] .. sums[hi] after the update
+     */
+    long accumulate(int[] sums, int[] column, int lo, int hi, boolean subtract) {
+        long total = 0;
+        if (subtract) {
+            for (int j = lo; j <= hi; j++) total += sums[j] -= column[j];
+        } else {
+            for (int j = lo; j <= hi; j++) total += sums[j] += column[j];
+        }
+        return total;
+    }
+}
@@ -22,7 +22,10 @@ import java.util.stream.IntStream;
  * 2. Concordance matrix was switched back to row-major ordering from ConcordanceMatrixStreams2. When the permutation
  * index, columns sums, and concordance data are contained in a single, linear matrix, the design favors row-major
  * ordering.
-
+ * 3. With {@link ConcordanceStorage#PACKED} storage, data only holds the permutation index and the column sums and the
+ * cells are held in two bitplanes (see {@link ConcordancePlanes}).
+ * 4. Column sums are computed from the ranks of x and y as Kendall counts (see {@link KendallCounts}) instead of
+ * being summed cell by cell.
  *
  * @author Adriano Caloiaro
  */
@@ -31,9 +34,17 @@ public final class ConcordanceMatrix {
  public short[] data;
  public int columnSumOffset;
  private int dataOffset;
+ private ConcordancePlanes planes;
+ private int[] inverse;
+ private int[] rx;
+ private int[] ry;
 
  private boolean DEBUG = false;
  public static ConcordanceMatrix create(double[] x, double[] y) {
+  return create(x, y, ConcordanceStorage.DENSE);
+ }
+
+ public static ConcordanceMatrix create(double[] x, double[] y, ConcordanceStorage storage) {
   final int N = x.length;
 
   ConcordanceMatrix m = new ConcordanceMatrix();
@@ -43,20 +54,30 @@ public final class ConcordanceMatrix {
   m.columnSumOffset = N;
   m.dataOffset = 2 * N;
 
+  // The ranks let column sums be computed as Kendall counts (see columnSums)
+  m.rx = Ranks.of(x);
+  m.ry = Ranks.of(y);
+  m.inverse = new int[N];
+
+  if (storage == ConcordanceStorage.PACKED) {
+   // Only the permutation index and column sums live in data; the cells live in the bitplanes
+   m.data = new short[2 * N];
+   m.planes = ConcordancePlanes.create(x, y, false);
+   m.pi(new int[N]);
+   IntStream.range(0, N).forEach(i -> m.setPiAt(i, i));
+   return m;
+  }
+
   // calculate the concordance matrix
   m.data = new short[(2 * N) + (N * N)]; // 2 * N for the permutation index column and the column sum column
   IntConsumer lambda = gid -> {
    int i = gid / N;
    int j = gid % N;
 
+   // By comparison rather than by the sign of (y[i] - y[j]) * (x[i] - x[j]), which underflows to 0 for tiny
+   // distinct values and would then disagree with the rank-based column sums
    if (i != j) {
-    double product = ((y[i] - y[j]) * (x[i] - x[j]));
-
-    if (product > 0) {
-     m.setV(i, j, (byte) 1);
-    } else if (product < 0) {
-     m.setV(i, j, (byte) - 1);
-    }
+    m.setV(i, j, (byte) DenseConcordanceStore.cell(x, y, i, j));
    }
   };
 
@@ -74,11 +95,13 @@ public final class ConcordanceMatrix {
 
  /** get the value of a cell */
  public short v(int i, int j) {
+  if (planes != null) return planes.v(i, j);
   return this.data[dataOffset + (i * size + j)];
  }
 
  /** get the value of a cell through its permuted index */
  public short pv(int i, int j) {
+  if (planes != null) return planes.v(data[i], data[j]);
   return this.data[dataOffset + (data[i] * size) + data[j]];
  }
 
@@ -100,6 +123,7 @@ public final class ConcordanceMatrix {
  public void pi(int[] pi) {
   for (int i = 0; i < size; i++) {
    this.data[i] = (short) pi[i];
+   this.inverse[pi[i]] = i;
   }
  }
 
@@ -109,6 +133,25 @@ public final class ConcordanceMatrix {
 
  public void setPiAt(int i, int value) {
   this.data[i] = (short) value;
+  this.inverse[value] = i;
+ }
+
+ /** the position of observation "value" in the permutation index */
+ public int indexOf(int value) {
+  return this.inverse[value];
+ }
+
+ /**
+  * Transposes the observations "k" and "l" in the permutation index. This is a by-value transposition, resolved in
+  * O(1) through the inverse permutation index.
+  */
+ public void transposeValues(int k, int l) {
+  int indexK = this.inverse[k];
+  int indexL = this.inverse[l];
+  this.data[indexK] = (short) l;
+  this.data[indexL] = (short) k;
+  this.inverse[k] = indexL;
+  this.inverse[l] = indexK;
  }
 
  public int[] cumulativeSums(int j, int high, int low) {
@@ -149,14 +192,22 @@ public final class ConcordanceMatrix {
   return sum;
  }
 
- /** Returns the sum of all columns from 0 to index, inclusive. */
+ /**
+  * Returns the sum of all columns from 0 to index, inclusive. The column sums of the leading block are the Kendall
+  * counts of the observations pi[0] .. pi[index] within that block, so they are computed in O(n log n) with
+  * KendallCounts rather than with an O(n^2) pass over the cells.
+  */
  public void columnSums(int index) {
+  int[] observations = new int[index + 1];
+  int[] counts = new int[index + 1];
   for (int i = 0; i <= index; i++) {
-   short sum = 0;
-   for (int j = 0; j <= index; j++) {
-    sum += pv(i, j);
-   }
-   this.data[columnSumOffset + i] = sum;
+   observations[i] = data[i];
+  }
+
+  KendallCounts.of(rx, ry, observations, index + 1, counts);
+
+  for (int i = 0; i <= index; i++) {
+   this.data[columnSumOffset + i] = (short) counts[i];
   }
  }
 
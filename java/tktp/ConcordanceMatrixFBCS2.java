@@ -1,30 +1,38 @@
 package tktp;
 
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Vector;
-import java.util.function.IntConsumer;
-import java.util.function.IntToDoubleFunction;
 import java.util.function.IntUnaryOperator;
 import java.util.stream.IntStream;
 
 
 /**
  * The concordance matrix is an nXn matrix where n is the number of observations in a bivariate distribution.
- * This implementation is a square, immutable, efficient in-memory representation backed by a single dimension
- * array of shorts in row-major order.
+ * This implementation is a square, immutable, efficient in-memory representation whose cells are held in a
+ * {@link ConcordanceStore} in row-major order.
  * <p>
  * Optimizations:
- * 1. All data is stored in a contiguous, row-major array with the following structure:
+ * 1. The permutation index and the column sums are kept in their own int arrays, next to the cells:
+ * [ permutation index  c1, c2, c3, … cn ]
+ * [ column sum         c1, c2, c3, … cn ]
  * [
- * [ permutation index  c1, c2, c3, … cn ],
- * [ column sum         c1, c2, c3, … cn ],
  * [ concordance       (r1,c1), (r1,c2), (r1,c3), (r1,cn) … ],
  * …
  * [ concordance       (rn,c1), (rn,c2), (rn,c3), (rn,cn) … ]
  * ]
- * 2. Concordance matrix was switched back to row-major ordering from ConcordanceMatrixStreams2. When the permutation
- * index, columns sums, and concordance data are contained in a single, linear matrix, the design favors row-major
- * ordering.
+ * Ints keep the permutation index and column sums exact past 32767 observations. The inverse of the permutation
+ * index is kept alongside it, so transpositions by value are O(1).
+ * 2. Concordance matrix was switched back to row-major ordering from ConcordanceMatrixStreams2. The cells are
+ * contiguous while they fit in a single array and are split over pages of whole rows past that, so no cell offset
+ * overflows an int (see {@link DenseConcordanceStore}).
+ * 3. With {@link ConcordanceStorage#PACKED} storage the cells are held in two bitplanes (see
+ * {@link ConcordancePlanes}). Column sums are then popcounts over masked words.
+ * 4. With {@link ConcordanceStorage#MAPPED} storage the bitplanes live off-heap in a memory-mapped file (see
+ * {@link MappedConcordanceStore}). A matrix built into a named file can be reopened with
+ * {@link #open(Path, boolean)}, skipping its O(n^2) construction.
+ * 5. With {@link ConcordanceStorage#IMPLICIT} storage no cells are materialized at all; they are computed on demand
+ * from integer ranks of x and y (see {@link ImplicitConcordanceStore}).
  *
  * @author Adriano Caloiaro
  */
@@ -34,10 +42,15 @@ public final class ConcordanceMatrixFBCS2 {
     private boolean DEBUG = false;
 
     private int size;
-    public short[] data;
-    public int columnSumOffset;
-    public int dataOffset;
+    private int[] pi;
+    private int[] inverse;
+    private int[] columnSums;
+    private ColumnSumTree columnSumTree;
+    private int[] tieColumns;
+    private int[] column;
+    private ConcordanceStore store;
     public double[] tauPath;
+    private int completedStage;
 
 
     //////////////////////////////////////////////////////////////////////////////
@@ -58,93 +71,156 @@ public final class ConcordanceMatrixFBCS2 {
     public short[] data() {
         short[] data = new short[size * size];
 
-        IntStream.range(0, size * size).forEach(k -> {
-            int i = k / size;
-            int j = k % size;
-            data[k] = pv(i, j);
-        });
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                data[i * size + j] = pv(i, j);
+            }
+        }
 
         return data;
     }
 
     public static ConcordanceMatrixFBCS2 create(int[] data, int size) {
-        final int N = size;
-
-        ConcordanceMatrixFBCS2 m = new ConcordanceMatrixFBCS2();
-        m.size = N;
+        DenseConcordanceStore store = new DenseConcordanceStore(size);
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                store.set(i, j, data[i * size + j]);
+            }
+        }
 
-        // Set the offsets
-        m.columnSumOffset = N;
-        m.dataOffset = 2 * N;
+        return create(store, false);
+    }
 
-        m.tauPath = new double[size];
+    public static ConcordanceMatrixFBCS2 create(double[] x, double[] y, boolean parallelize) {
+        return create(x, y, parallelize, ConcordanceStorage.DENSE);
+    }
 
+    public static ConcordanceMatrixFBCS2 create(double[] x, double[] y, boolean parallelize, ConcordanceStorage storage) {
         // calculate the concordance matrix
-        m.data = new short[(2 * N) + (N * N)]; // 2 * N for the permutation index column and the column sum column
-
-        IntConsumer lambda = gid -> {
-            int i = gid / N;
-            int j = gid % N;
-
-            m.setV(i, j, (byte) data[i * size + j]);
-        };
-
-        // Calculate the concordance matrix either sequentially or in parallel based on job size
-        IntStream.range(0, N * N).forEach(lambda);
-
-        // initialize the base matrix with a naturally ordered permutation index, i.e. 0 .. N-1
-        m.pi(new int[N]);
+        ConcordanceStore store;
+        switch (storage) {
+            case PACKED:
+                store = ConcordancePlanes.create(x, y, parallelize);
+                break;
+            case MAPPED:
+                store = MappedConcordanceStore.create(x, y, parallelize);
+                break;
+            case IMPLICIT:
+                store = ImplicitConcordanceStore.create(x, y);
+                break;
+            default:
+                store = DenseConcordanceStore.create(x, y, parallelize);
+        }
 
-        // Initialize the natural ordering of pi values
-        IntStream.range(0, N).forEach(i -> m.setPiAt(i, i));   // Cannot assign pi value with a JTP device because of the even/divisible by 64 bug
+        return create(store, parallelize);
+    }
 
-        return m;
+    /**
+     * Creates a concordance matrix whose cells are memory-mapped from "file". The file is kept so that the matrix can
+     * later be reopened with {@link #open(Path, boolean)}.
+     */
+    public static ConcordanceMatrixFBCS2 create(double[] x, double[] y, boolean parallelize, Path file) {
+        return create(MappedConcordanceStore.create(x, y, parallelize, file), parallelize);
     }
 
-    public static ConcordanceMatrixFBCS2 create(double[] x, double[] y, boolean parallelize) {
-        final int N = x.length;
+    /**
+     * Reopens a concordance matrix written by {@link #create(double[], double[], boolean, Path)}. The matrix starts
+     * with a naturally ordered permutation index, as if it had just been created.
+     */
+    public static ConcordanceMatrixFBCS2 open(Path file, boolean parallelize) {
+        return create(MappedConcordanceStore.open(file), parallelize);
+    }
 
+    /**
+     * Wraps the cells in "store" with a naturally ordered permutation index, i.e. 0 .. N-1
+     */
+    static ConcordanceMatrixFBCS2 create(ConcordanceStore store, boolean parallelize) {
         ConcordanceMatrixFBCS2 m = new ConcordanceMatrixFBCS2();
-        m.size = N;
         m.PARALLELIZE = parallelize;
+        m.store = store;
+        m.init();
+        return m;
+    }
 
-        // Set the offsets
-        m.columnSumOffset = N;
-        m.dataOffset = 2 * N;
-
-        m.tauPath = new double[N];
-        // calculate the concordance matrix
-        m.data = new short[(2 * N) + (N * N)]; // 2 * N for the permutation index column and the column sum column
-
-        IntConsumer lambda = gid -> {
-            int i = gid / N;
-            int j = gid % N;
+    /**
+     * Creates a concordance matrix, refilling the cell buffer of "reuse" in place when it has the requested storage
+     * and can hold the new matrix. "reuse" must not be used by the caller afterwards.
+     *
+     * @param reuse A matrix whose buffers may be recycled, or null
+     */
+    static ConcordanceMatrixFBCS2 create(double[] x, double[] y, boolean parallelize, ConcordanceStorage storage,
+                                         ConcordanceMatrixFBCS2 reuse) {
+        if (sameStorage(storage, reuse) && reuse.store.fill(x, y, parallelize)) {
+            reuse.PARALLELIZE = parallelize;
+            reuse.init();
+            return reuse;
+        }
 
-            if (i != j) {
-                double product = ((y[i] - y[j]) * (x[i] - x[j]));
+        return create(x, y, parallelize, storage);
+    }
 
-                if (product > 0) {
-                    m.setV(i, j, (byte) 1);
-                } else if (product < 0) {
-                    m.setV(i, j, (byte) -1);
-                }
-            }
-        };
+    /**
+     * Creates a concordance matrix from the ranks of x and y (see {@link Ranks}) rather than from their values,
+     * recycling "reuse" as {@link #create(double[], double[], boolean, ConcordanceStorage, ConcordanceMatrixFBCS2)}
+     * does. The cells are the same as those of the values.
+     */
+    static ConcordanceMatrixFBCS2 create(int[] rx, int[] ry, boolean parallelize, ConcordanceStorage storage,
+                                         ConcordanceMatrixFBCS2 reuse) {
+        if (sameStorage(storage, reuse) && reuse.store.fill(rx, ry, parallelize)) {
+            reuse.PARALLELIZE = parallelize;
+            reuse.init();
+            return reuse;
+        }
 
-        // Calculate the concordance matrix either sequentially or in parallel based on job size
-        if (parallelize) {
-            IntStream.range(0, N * N).parallel().forEach(lambda);
-        } else IntStream.range(0, N * N).forEach(lambda);
+        ConcordanceStore store;
+        switch (storage) {
+            case PACKED:
+                store = ConcordancePlanes.create(rx, ry, parallelize);
+                break;
+            case MAPPED:
+                store = MappedConcordanceStore.create(rx, ry, parallelize);
+                break;
+            case IMPLICIT:
+                store = new ImplicitConcordanceStore(rx, ry);
+                break;
+            default:
+                store = DenseConcordanceStore.create(rx, ry, parallelize);
+        }
+        return create(store, parallelize);
+    }
 
+    // Whether the cell buffers of "reuse" have the requested storage, and may be refilled
+    private static boolean sameStorage(ConcordanceStorage storage, ConcordanceMatrixFBCS2 reuse) {
+        return reuse != null
+                && ((storage == ConcordanceStorage.DENSE && reuse.store instanceof DenseConcordanceStore)
+                || (storage == ConcordanceStorage.PACKED && reuse.store instanceof ConcordancePlanes)
+                || (storage == ConcordanceStorage.MAPPED && reuse.store instanceof MappedConcordanceStore));
+    }
 
-        // initialize the base matrix with a naturally ordered permutation index, i.e. 0 .. N-1
-        m.pi(new int[N]);
+    /**
+     * Sizes the permutation index, column sums and tau path to the store, and resets the permutation index to its
+     * natural ordering, i.e. 0 .. N-1. Arrays of the right size are reused.
+     */
+    private void init() {
+        final int N = store.size();
+
+        if (pi == null || size != N) {
+            pi = new int[N];
+            inverse = new int[N];
+            columnSums = new int[N];
+            columnSumTree = new ColumnSumTree(columnSums);
+            tieColumns = new int[N];
+            column = new int[N];
+        }
+        size = N;
+        tauPath = new double[N];
+        completedStage = 0;
 
         // Initialize the natural ordering of pi values
-        if (parallelize) IntStream.range(0, N).parallel().forEach(i -> m.setPiAt(i, i));
-        else IntStream.range(0, N).forEach(i -> m.setPiAt(i, i));
-
-        return m;
+        for (int i = 0; i < N; i++) {
+            pi[i] = i;
+            inverse[i] = i;
+        }
     }
 
     //////////////////////////////////////////////////////////////////////////////
@@ -155,21 +231,38 @@ public final class ConcordanceMatrixFBCS2 {
      * get the value of a cell
      */
     public short v(int i, int j) {
-        return this.data[dataOffset + (i * size + j)];
+        return store.v(i, j);
     }
 
     /**
      * get the value of a cell through its permuted index
      */
     public short pv(int i, int j) {
-        return this.data[dataOffset + (data[i] * size) + data[j]];
+        return store.v(pi[i], pi[j]);
+    }
+
+    /**
+     * The cells of this matrix, by natural index
+     */
+    ConcordanceStore store() {
+        return store;
     }
 
     /**
-     * set the value of a cell
+     * The lowest stage whose tau path score was computed. This is 0 unless the search that ordered this matrix was
+     * stopped early by a {@link StoppingRule}, in which case the scores below it are NaN and the observations at
+     * positions 0 .. completedStage are not ordered.
      */
-    private void setV(int i, int j, byte value) {
-        this.data[dataOffset + (i * size) + j] = value;
+    public int completedStage() {
+        return completedStage;
+    }
+
+    /**
+     * Marks the stages below "stage" as not computed
+     */
+    void truncate(int stage) {
+        Arrays.fill(tauPath, 0, stage, Double.NaN);
+        completedStage = stage;
     }
 
     /**
@@ -183,21 +276,71 @@ public final class ConcordanceMatrixFBCS2 {
      * permutation index
      */
     public int[] pi() {
-        return IntStream.range(0, size).map(i -> this.data[i]).toArray();
+        return Arrays.copyOf(this.pi, size);
     }
 
     public void pi(int[] pi) {
-        for (int i = 0; i < size; i++) {
-            this.data[i] = (short) pi[i];
-        }
+        System.arraycopy(pi, 0, this.pi, 0, size);
+        for (int i = 0; i < size; i++) this.inverse[pi[i]] = i;
     }
 
     public int piVal(int i) {
-        return this.data[i];
+        return this.pi[i];
     }
 
+    /**
+     * Assigns observation "value" to (permuted) column i. The permutation index is only a permutation again once
+     * every displaced observation has been reassigned.
+     */
     public void setPiAt(int i, int value) {
-        this.data[i] = (short) value;
+        this.pi[i] = value;
+        this.inverse[value] = i;
+    }
+
+    /**
+     * The inverse of the permutation index, i.e. the (permuted) column at which observation "value" sits
+     */
+    public int indexOf(int value) {
+        return this.inverse[value];
+    }
+
+    /**
+     * Transposes the observations "a" and "b" in the permutation index, along with their column sums. This is a
+     * by-value transposition, resolved in O(1) through the inverse permutation index.
+     */
+    public void swapValues(int a, int b) {
+        swapPositions(this.inverse[a], this.inverse[b]);
+    }
+
+    /**
+     * Transposes the observations at (permuted) columns i and j, along with their column sums
+     */
+    public void swapPositions(int i, int j) {
+        int a = this.pi[i];
+        int b = this.pi[j];
+        this.pi[i] = b;
+        this.pi[j] = a;
+        this.inverse[b] = i;
+        this.inverse[a] = j;
+        swapColumnSums(i, j);
+    }
+
+    /**
+     * The column sum at (permuted) column j
+     */
+    public int columnSum(int j) {
+        return this.columnSums[j];
+    }
+
+    /**
+     * Swaps the column sums of the (permuted) columns j and k
+     */
+    private void swapColumnSums(int j, int k) {
+        int temp = this.columnSums[j];
+        this.columnSums[j] = this.columnSums[k];
+        this.columnSums[k] = temp;
+        columnSumTree.invalidate(j);
+        columnSumTree.invalidate(k);
     }
 
 
@@ -243,6 +386,43 @@ public final class ConcordanceMatrixFBCS2 {
         return sums;
     }
 
+    /**
+     * Tests whether column k stagewise dominates column "stage": the cumulative sums of column k, as computed by
+     * {@link #cumulativeSums(int, int, int)} from "stage" to k, are never below those of column "stage" and are above
+     * them at least once (the last sum is excluded from the comparison).
+     * <p>
+     * This is the same test as comparing {@code cumulativeSums(stage, stage, k)} with {@code cumulativeSums(k, stage,
+     * k)}, but the two columns are summed side by side without allocating, and the test stops as soon as column k
+     * falls below column "stage".
+     */
+    public boolean dominates(int stage, int k) {
+        final int rowI = pi[stage];
+        final int rowK = pi[k];
+
+        // Accumulate rows [0, stage) of both columns. The matrix is symmetric, so the columns are read as rows.
+        int sumI = 0;
+        int sumK = 0;
+        for (int i = 0; i < stage; i++) {
+            sumI += store.v(rowI, pi[i]);
+            sumK += store.v(rowK, pi[i]);
+        }
+
+        // Row "stage" is swapped out for row k when row k falls on the diagonal. Introduced in tKtp (2014-12-12)
+        if (store.v(rowI, rowK) != 0) sumI += store.v(rowI, rowI);
+        if (store.v(rowK, rowK) != 0) sumK += store.v(rowK, rowI);
+
+        boolean anyGreaterThan = false;
+        for (int i = stage + 1; ; i++) {
+            if (sumI > sumK) return false;
+            if (sumK > sumI) anyGreaterThan = true;
+            if (i >= k) break;
+            sumI += store.v(rowI, pi[i]);
+            sumK += store.v(rowK, pi[i]);
+        }
+
+        return anyGreaterThan;
+    }
+
     /**
      * Computes the stage-wise matrix sum by subtracting the sum of the least concordant column
      * from all other column sums.
@@ -250,27 +430,15 @@ public final class ConcordanceMatrixFBCS2 {
      * @param stage The column at which to stop summing the matrix
      */
     public double matrixSum(int stage) {
-        IntStream sumStream = IntStream.rangeClosed(0, stage);
-        IntToDoubleFunction sumLambda = j -> this.data[columnSumOffset + j];
-
-        double sum = (PARALLELIZE) ?
-                sumStream.parallel().mapToDouble(sumLambda).sum()
-                : sumStream.mapToDouble(sumLambda).sum();
-
-
-        return sum;
+        return matrixSum(0, stage);
     }
 
     public double matrixSum(int start, int end) {
-        IntStream sumStream = IntStream.rangeClosed(start, end);
-        IntToDoubleFunction sumLambda = j -> this.data[columnSumOffset + j];
-
-        double sum = (PARALLELIZE) ?
-                sumStream.parallel().mapToDouble(sumLambda).sum()
-                : sumStream.mapToDouble(sumLambda).sum();
-
-
-        return sum;
+        return (double) KernelExecutor.sum(PARALLELIZE, start, end + 1, 1, (from, to) -> {
+            long sum = 0;
+            for (int j = from; j < to; j++) sum += this.columnSums[j];
+            return sum;
+        });
     }
 
     /**
@@ -279,15 +447,7 @@ public final class ConcordanceMatrixFBCS2 {
      * @return The new matrix sum at stage
      */
     public double addToColSums(int stage, int colId) {
-        IntStream sumStream = IntStream.rangeClosed(0, stage);
-        IntToDoubleFunction sumLambda = j -> {
-            this.data[columnSumOffset + j] += (data[this.dataOffset + this.data[j] * size + colId]);
-            return this.data[columnSumOffset + j];
-        };
-        double sum = (PARALLELIZE) ?
-                sumStream.parallel().mapToDouble(sumLambda).sum()
-                : sumStream.mapToDouble(sumLambda).sum();
-        return sum;
+        return updateColSums(0, stage, colId, false);
     }
 
     /**
@@ -296,44 +456,61 @@ public final class ConcordanceMatrixFBCS2 {
      * @return The new matrix sum up at stage
      */
     public double subtractFromColSums(int stage, int colId) {
-        IntStream sumStream = IntStream.rangeClosed(0, stage);
-        IntToDoubleFunction sumLambda = j -> {
-            this.data[columnSumOffset + j] -= (data[this.dataOffset + this.data[j] * size + colId]);
-            return this.data[columnSumOffset + j];
-        };
-        double sum = (PARALLELIZE) ?
-                sumStream.parallel().mapToDouble(sumLambda).sum()
-                : sumStream.mapToDouble(sumLambda).sum();
-        return sum;
+        return updateColSums(0, stage, colId, true);
     }
 
     public double subtractFromColSums(int start, int stage, int colId) {
-        IntStream sumStream = IntStream.rangeClosed(start, stage);
-        IntToDoubleFunction sumLambda = j -> {
-            this.data[columnSumOffset + j] -= (data[this.dataOffset + this.data[j] * size + colId]);
-            return this.data[columnSumOffset + j];
-        };
-        double sum = (PARALLELIZE) ?
-                sumStream.parallel().mapToDouble(sumLambda).sum()
-                : sumStream.mapToDouble(sumLambda).sum();
-        return sum;
+        return updateColSums(start, stage, colId, true);
+    }
+
+    /**
+     * Adds (or subtracts) the cells of column colId to the column sums of positions lo .. hi, inclusive
+     *
+     * @return The total of those column sums after the update
+     */
+    private double updateColSums(int lo, int hi, int colId, boolean subtract) {
+        columnSumTree.invalidate(lo, hi);
+
+        // The matrix is symmetric, so the cells of column colId are gathered from row colId, which is sequential in
+        // memory, before the kernel updates the sums. Chunks own disjoint slices of both arrays.
+        return (double) KernelExecutor.sum(PARALLELIZE, lo, hi + 1, 1, (from, to) -> {
+            for (int j = from; j < to; j++) column[j] = store.v(colId, pi[j]);
+            return ConcordanceKernels.INSTANCE.accumulate(columnSums, column, from, to - 1, subtract);
+        });
     }
 
     /**
      * Returns the sum of all columns from 0 to index, inclusive.
      */
     public IntUnaryOperator columnSums(int index) {
+        // The matrix is symmetric, so the column sum is the sum of the row masked by the observations in
+        // pi[0] .. pi[index]. Rows are read sequentially, and packed stores reduce it to popcounts over masked words.
+        long[] mask = ConcordancePlanes.mask(pi, index, size);
+        columnSumTree.invalidate(0, size - 1);
         return j -> {
-
-            short sum = 0;
-            for (int i = 0; i <= index; i++) {
-                sum += pv(i, j);
-            }
-            this.data[columnSumOffset + j] = sum;
+            int sum = store.rowSum(pi[j], mask);
+            this.columnSums[j] = sum;
             return sum;
         };
     }
 
+    /**
+     * Initializes the column sums of the full matrix from per-observation Kendall counts (see {@link KendallCounts}),
+     * in place of an O(n^2) pass of {@link #columnSums(int)} over every column.
+     *
+     * @param counts The concordant-minus-discordant count of each observation, by natural index
+     * @return The matrix sum, i.e. the sum of all column sums
+     */
+    public long initColumnSums(int[] counts) {
+        columnSumTree.invalidate(0, size - 1);
+        long sum = 0;
+        for (int j = 0; j < size; j++) {
+            this.columnSums[j] = counts[pi[j]];
+            sum += this.columnSums[j];
+        }
+        return sum;
+    }
+
     /**
      * Create a new concordance matrix from the permuted index
      */
@@ -351,16 +528,32 @@ public final class ConcordanceMatrixFBCS2 {
     }
 
     /**
-     * Identifies all columns whose sum is equal to the minimum
+     * Identifies all columns whose sum is equal to the minimum. The columns are found through the column sum tree,
+     * in O(log n) per tie rather than with two scans of every column.
      */
     public Vector<Integer> tieList(int index) {
-        Vector<Integer> ties = new Vector<>();
-        int minColumnSum = IntStream.rangeClosed(0, index).map(j -> this.data[columnSumOffset + j]).min().getAsInt();
-        IntStream.rangeClosed(0, index).filter(j -> this.data[columnSumOffset + j] == minColumnSum).forEach(j -> ties.add((int) data[j]));
+        int count = columnSumTree.ties(index, tieColumns);
+
+        Vector<Integer> ties = new Vector<>(count);
+        for (int t = 0; t < count; t++) ties.add(pi[tieColumns[t]]);
         if (DEBUG) System.out.format("tie list: %s\n", ties.toString());
         return ties;
     }
 
+    /**
+     * Identifies all columns whose sum is equal to the minimum, without boxing
+     *
+     * @param index The last column to consider
+     * @param ties  Receives the natural indexes of the tied observations, in column order; must hold at least
+     *              index + 1 entries
+     * @return The number of tied observations
+     */
+    public int tieList(int index, int[] ties) {
+        int count = columnSumTree.ties(index, ties);
+        for (int t = 0; t < count; t++) ties[t] = pi[ties[t]];
+        return count;
+    }
+
     /**
      * Create a printable table of the matrix values
      */
@@ -378,7 +571,7 @@ public final class ConcordanceMatrixFBCS2 {
         }
         sb.append("pi:         " + Arrays.toString(pi()) + "\n");
         sb.append(("Column sums: "));
-        IntStream.range(0, size).forEach(j -> sb.append(this.data[columnSumOffset + j] + ", "));
+        IntStream.range(0, size).forEach(j -> sb.append(this.columnSums[j] + ", "));
         return sb.toString();
     }
 
@@ -398,7 +591,7 @@ public final class ConcordanceMatrixFBCS2 {
             sb.append('\n');
         }
         sb.append(("Column sums: "));
-        IntStream.rangeClosed(0, colId).forEach(j -> sb.append(this.data[columnSumOffset + j] + ", "));
+        IntStream.rangeClosed(0, colId).forEach(j -> sb.append(this.columnSums[j] + ", "));
         sb.append("\npi:         " + Arrays.toString(pi()) + "\n");
 
         return sb.toString();
@@ -411,8 +604,8 @@ public final class ConcordanceMatrixFBCS2 {
         int extra = forwardStage - stage;
         System.out.format("Column Sums [%d]: ", stage);
         for(int j = 0; j <= stage + extra; j++) {
-            if (j == stage) System.out.print(this.data[columnSumOffset + j] + "*, ");
-            else System.out.print(this.data[columnSumOffset + j] + ", ");
+            if (j == stage) System.out.print(this.columnSums[j] + "*, ");
+            else System.out.print(this.columnSums[j] + ", ");
 
         }
         System.out.println("");
@@ -0,0 +1,194 @@
+package tktp;
+
+/**
+ * A bit-packed representation of the cells of a concordance matrix. Since a cell can only take the values -1, 0 and
+ * +1, each row is stored as two bitplanes of longs: one marking the concordant cells and one marking the discordant
+ * cells. A cell costs two bits instead of the sixteen used by the short-backed matrices.
+ * <p>
+ * Layout:
+ * [
+ * [ concordant  (r1, c1..c64), (r1, c65..c128), … (rn, …) ],
+ * [ discordant  (r1, c1..c64), (r1, c65..c128), … (rn, …) ]
+ * ]
+ * Bit (j mod 64) of word (j / 64) in row i is set when cell (i,j) is concordant (resp. discordant).
+ * <p>
+ * Sums over a row restricted to a set of observations are computed with {@link Long#bitCount(long)} over the row words
+ * masked by the set, which touches 1/64th of the memory of a cell-by-cell pass.
+ * <p>
+ * Those masked sums only serve the full column sum pass ({@link ConcordanceMatrixFBCS2#columnSums(int)}), which a
+ * search runs only when it has no Kendall counts, e.g. on a reopened matrix. The stage loop does not use them: each
+ * stage adds a different single cell to every remaining column sum, so its updates read the cells one at a time, and
+ * there a packed matrix saves memory (two bits a cell instead of sixteen) but not time.
+ * <p>
+ * As with {@link DenseConcordanceStore}, the planes are contiguous while they fit in a single page and are otherwise
+ * split over pages of whole rows.
+ */
+final class ConcordancePlanes implements ConcordanceStore {
+    // The largest number of words held by a single page
+    static final int MAX_PAGE_WORDS = 1 << 27;
+
+    private int size;
+    private int words;
+    private int rowsPerPage;
+    private final long[][] concordant;
+    private final long[][] discordant;
+
+    private ConcordancePlanes(int size) {
+        this.size = size;
+        this.words = wordsFor(size);
+        this.rowsPerPage = Math.max(1, Math.min(size, MAX_PAGE_WORDS / Math.max(1, words)));
+
+        int pageCount = size == 0 ? 0 : (size + rowsPerPage - 1) / rowsPerPage;
+        this.concordant = new long[pageCount][];
+        this.discordant = new long[pageCount][];
+        for (int p = 0; p < pageCount; p++) {
+            int rows = Math.min(rowsPerPage, size - p * rowsPerPage);
+            concordant[p] = new long[rows * words];
+            discordant[p] = new long[rows * words];
+        }
+    }
+
+    /**
+     * Builds the bitplanes for the bivariate distribution (x, y)
+     */
+    static ConcordancePlanes create(double[] x, double[] y, boolean parallelize) {
+        final int N = x.length;
+        ConcordancePlanes p = new ConcordancePlanes(N);
+
+        p.fillRows(x, y, parallelize);
+        return p;
+    }
+
+    /**
+     * Builds the bitplanes for the observations ranked rx and ry (see {@link Ranks})
+     */
+    static ConcordancePlanes create(int[] rx, int[] ry, boolean parallelize) {
+        ConcordancePlanes p = new ConcordancePlanes(rx.length);
+        p.fill(rx, ry, parallelize);
+        return p;
+    }
+
+    /**
+     * Refills the planes in place when the new matrix has the same size, or fits in a single page
+     */
+    @Override
+    public boolean fill(double[] x, double[] y, boolean parallelize) {
+        if (!resize(x.length)) return false;
+        fillRows(x, y, parallelize);
+        return true;
+    }
+
+    /**
+     * Refills the planes from ranks, under the same conditions as {@link #fill(double[], double[], boolean)}
+     */
+    @Override
+    public boolean fill(int[] rx, int[] ry, boolean parallelize) {
+        if (!resize(rx.length)) return false;
+        KernelExecutor.forEach(parallelize, 0, size, size, (lo, hi) -> {
+            for (int i = lo; i < hi; i++) {
+                ConcordanceKernels.INSTANCE.signWords(rx, ry, i, size, concordant[i / rowsPerPage],
+                        discordant[i / rowsPerPage], (i % rowsPerPage) * words);
+            }
+        });
+        return true;
+    }
+
+    // Makes the planes n by n when they are not already, if a single page can hold that many rows
+    private boolean resize(int n) {
+        if (n == size) return true;
+        int newWords = wordsFor(n);
+        if (concordant.length != 1 || (long) n * newWords > concordant[0].length) return false;
+        size = n;
+        words = newWords;
+        rowsPerPage = n;
+        return true;
+    }
+
+    private void fillRows(double[] x, double[] y, boolean parallelize) {
+        // Each row owns its words, so rows can be filled independently
+        KernelExecutor.forEach(parallelize, 0, size, size, (lo, hi) -> {
+            for (int i = lo; i < hi; i++) fillRow(i, x, y);
+        });
+    }
+
+    /**
+     * Builds the bitplanes from a row-major array of -1, 0 and +1 values
+     */
+    static ConcordancePlanes create(int[] data, int size) {
+        ConcordancePlanes p = new ConcordancePlanes(size);
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                p.set(i, j, data[i * size + j]);
+            }
+        }
+        return p;
+    }
+
+    /**
+     * The number of longs needed to hold one bit for each of n observations
+     */
+    static int wordsFor(int n) {
+        return (n + 63) >>> 6;
+    }
+
+    private void fillRow(int i, double[] x, double[] y) {
+        ConcordanceKernels.INSTANCE.signWords(x, y, i, size, concordant[i / rowsPerPage], discordant[i / rowsPerPage],
+                (i % rowsPerPage) * words);
+    }
+
+    /**
+     * the size of one dimension of the matrix
+     */
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public short v(int i, int j) {
+        int p = i / rowsPerPage;
+        int w = (i % rowsPerPage) * words + (j >>> 6);
+        long bit = 1L << j;
+        if ((concordant[p][w] & bit) != 0) return 1;
+        if ((discordant[p][w] & bit) != 0) return -1;
+        return 0;
+    }
+
+    @Override
+    public void set(int i, int j, int value) {
+        int p = i / rowsPerPage;
+        int w = (i % rowsPerPage) * words + (j >>> 6);
+        long bit = 1L << j;
+        concordant[p][w] &= ~bit;
+        discordant[p][w] &= ~bit;
+        if (value > 0) concordant[p][w] |= bit;
+        else if (value < 0) discordant[p][w] |= bit;
+    }
+
+    @Override
+    public int rowSum(int row, long[] mask) {
+        final long[] concordant = this.concordant[row / rowsPerPage];
+        final long[] discordant = this.discordant[row / rowsPerPage];
+        final int rowOffset = (row % rowsPerPage) * words;
+        int sum = 0;
+        for (int w = 0; w < words; w++) {
+            long m = mask[w];
+            if (m != 0) {
+                sum += Long.bitCount(concordant[rowOffset + w] & m) - Long.bitCount(discordant[rowOffset + w] & m);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Returns a mask with the bits of the observations pi[0] .. pi[index] set
+     */
+    static long[] mask(int[] pi, int index, int size) {
+        long[] mask = new long[wordsFor(size)];
+        for (int i = 0; i <= index; i++) {
+            int obs = pi[i];
+            mask[obs >>> 6] |= 1L << obs;
+        }
+        return mask;
+    }
+}
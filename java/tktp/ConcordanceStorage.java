@@ -0,0 +1,29 @@
+package tktp;
+
+/**
+ * The ways in which the cells of a concordance matrix can be stored.
+ */
+public enum ConcordanceStorage {
+    /**
+     * One short per cell in row-major order
+     */
+    DENSE,
+
+    /**
+     * Two bits per cell, stored as a concordant and a discordant bitplane. Row and column sums are computed with
+     * popcounts over masked words.
+     */
+    PACKED,
+
+    /**
+     * Two bits per cell, stored as bitplanes in a memory-mapped scratch file outside of the Java heap. The operating
+     * system's page cache decides which rows are resident.
+     */
+    MAPPED,
+
+    /**
+     * No cells are stored. Each cell is computed on demand from integer ranks of x and y, so the matrix needs O(n)
+     * memory instead of O(n^2).
+     */
+    IMPLICIT
+}
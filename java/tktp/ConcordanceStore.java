@@ -0,0 +1,58 @@
+package tktp;
+
+/**
+ * Storage for the cells of an nXn concordance matrix, addressed by the natural (unpermuted) indexes of the
+ * observations. Implementations decide how the cells are laid out; the permutation index and column sums are kept by
+ * the matrix that owns the store.
+ */
+interface ConcordanceStore {
+
+    /**
+     * the size of one dimension of the matrix
+     */
+    int size();
+
+    /**
+     * get the value of a cell
+     */
+    short v(int i, int j);
+
+    /**
+     * set the value of a cell
+     */
+    void set(int i, int j, int value);
+
+    /**
+     * Refills this store in place with the cells of the bivariate distribution (x, y), if its buffers can hold them
+     *
+     * @return Whether the store was refilled; when false the store is unchanged and a new one must be created
+     */
+    default boolean fill(double[] x, double[] y, boolean parallelize) {
+        return false;
+    }
+
+    /**
+     * Refills this store in place with the cells of the observations ranked rx and ry (see {@link Ranks}), if its
+     * buffers can hold them. The cells are those of the values the ranks were taken from.
+     *
+     * @return Whether the store was refilled; when false the store is unchanged and a new one must be created
+     */
+    default boolean fill(int[] rx, int[] ry, boolean parallelize) {
+        return false;
+    }
+
+    /**
+     * Returns the sum of row "row" over the observations whose bits are set in "mask"
+     */
+    default int rowSum(int row, long[] mask) {
+        int sum = 0;
+        for (int w = 0; w < mask.length; w++) {
+            long m = mask[w];
+            while (m != 0) {
+                sum += v(row, (w << 6) + Long.numberOfTrailingZeros(m));
+                m &= m - 1;
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,77 @@
+package tktp;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A SHA-256 digest of the contents of the inputs to a search, so that results can be matched to the exact inputs
+ * that produced them. Each value is hashed as its little-endian bits, and each array and string is preceded by its
+ * length, so that different sequences of inputs never hash the same bytes.
+ */
+final class ContentHash {
+    private final MessageDigest digest;
+    private final ByteBuffer buffer = ByteBuffer.allocate(8192).order(ByteOrder.LITTLE_ENDIAN);
+
+    ContentHash() {
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The first 8 bytes of the digest of "v", as a long
+     */
+    static long of(double[] v) {
+        return prefix(new ContentHash().update(v).digest());
+    }
+
+    /**
+     * The first 8 bytes of "digest", as a long
+     */
+    static long prefix(byte[] digest) {
+        return ByteBuffer.wrap(digest).order(ByteOrder.LITTLE_ENDIAN).getLong();
+    }
+
+    ContentHash update(double[] v) {
+        update(v.length);
+        for (double d : v) {
+            if (buffer.remaining() < Double.BYTES) drain();
+            buffer.putLong(Double.doubleToLongBits(d));
+        }
+        return this;
+    }
+
+    ContentHash update(long v) {
+        if (buffer.remaining() < Long.BYTES) drain();
+        buffer.putLong(v);
+        return this;
+    }
+
+    ContentHash update(String s) {
+        return update(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    ContentHash update(byte[] b) {
+        update(b.length);
+        drain();
+        digest.update(b);
+        return this;
+    }
+
+    byte[] digest() {
+        drain();
+        return digest.digest();
+    }
+
+    private void drain() {
+        buffer.flip();
+        digest.update(buffer);
+        buffer.clear();
+    }
+}
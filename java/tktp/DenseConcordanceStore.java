@@ -0,0 +1,187 @@
+package tktp;
+
+/**
+ * Stores one short per cell in row-major order.
+ * <p>
+ * When all nXn cells fit in a single array they are stored contiguously. Past that size (n of roughly 16k and up)
+ * the rows are split over pages of whole rows so that no cell offset overflows an int, whatever the size of the
+ * matrix.
+ * <p>
+ * Rows may be laid out with room to spare (a stride above the size), so that a matrix can grow by a few observations
+ * without moving its cells (see {@link #grow(int)}).
+ */
+final class DenseConcordanceStore implements ConcordanceStore {
+    // The largest number of cells held by a single page
+    static final int MAX_PAGE_CELLS = 1 << 28;
+
+    private int size;
+    private int stride;
+    private int rowsPerPage;
+    private final short[] flat;
+    private final short[][] pages;
+
+    DenseConcordanceStore(int size) {
+        this(size, size);
+    }
+
+    /**
+     * @param size     The size of one dimension of the matrix
+     * @param capacity The size the matrix may grow to without moving its cells
+     */
+    DenseConcordanceStore(int size, int capacity) {
+        this.size = size;
+        this.stride = capacity;
+
+        if ((long) capacity * capacity <= MAX_PAGE_CELLS) {
+            this.rowsPerPage = capacity;
+            this.flat = new short[capacity * capacity];
+            this.pages = null;
+        } else {
+            this.rowsPerPage = Math.max(1, MAX_PAGE_CELLS / capacity);
+            this.flat = null;
+            this.pages = new short[(capacity + rowsPerPage - 1) / rowsPerPage][];
+            for (int p = 0; p < pages.length; p++) {
+                int rows = Math.min(rowsPerPage, capacity - p * rowsPerPage);
+                pages[p] = new short[rows * capacity];
+            }
+        }
+    }
+
+    /**
+     * Builds the cells for the bivariate distribution (x, y)
+     */
+    static DenseConcordanceStore create(double[] x, double[] y, boolean parallelize) {
+        final int N = x.length;
+        DenseConcordanceStore s = new DenseConcordanceStore(N);
+
+        s.fillRows(x, y, parallelize);
+        return s;
+    }
+
+    /**
+     * Builds the cells for the observations ranked rx and ry (see {@link Ranks})
+     */
+    static DenseConcordanceStore create(int[] rx, int[] ry, boolean parallelize) {
+        DenseConcordanceStore s = new DenseConcordanceStore(rx.length);
+        s.fill(rx, ry, parallelize);
+        return s;
+    }
+
+    /**
+     * Refills the store in place when the new matrix has the same size, or fits in the contiguous array
+     */
+    @Override
+    public boolean fill(double[] x, double[] y, boolean parallelize) {
+        if (!resize(x.length)) return false;
+        fillRows(x, y, parallelize);
+        return true;
+    }
+
+    /**
+     * Refills the store from ranks, under the same conditions as {@link #fill(double[], double[], boolean)}
+     */
+    @Override
+    public boolean fill(int[] rx, int[] ry, boolean parallelize) {
+        if (!resize(rx.length)) return false;
+        // Each row is written by exactly one task, zeros included
+        KernelExecutor.forEach(parallelize, 0, size, size, (lo, hi) -> {
+            for (int i = lo; i < hi; i++) ConcordanceKernels.INSTANCE.signs(rx, ry, i, 0, size, page(i), offset(i));
+        });
+        return true;
+    }
+
+    // Makes the store n by n when it is not already, if the contiguous array can hold that many cells
+    private boolean resize(int n) {
+        if (n == size) return true;
+        if (flat == null || (long) n * n > flat.length) return false;
+        size = n;
+        stride = n;
+        rowsPerPage = n;
+        return true;
+    }
+
+    /**
+     * Returns a store of size n holding the cells of this one in its top-left corner. This store is resized and
+     * returned when its stride has room for n; otherwise its cells are copied into a new store with room for a
+     * quarter more. Only the cells of the existing rows and columns are kept: the caller fills in the new ones.
+     */
+    DenseConcordanceStore grow(int n) {
+        int rowCapacity = flat != null ? flat.length / stride : stride;
+        if (n <= stride && n <= rowCapacity) {
+            size = n;
+            return this;
+        }
+
+        DenseConcordanceStore grown = new DenseConcordanceStore(n, Math.max(n, stride + (stride >> 2)));
+        for (int i = 0; i < size; i++) {
+            System.arraycopy(page(i), offset(i), grown.page(i), grown.offset(i), size);
+        }
+        return grown;
+    }
+
+    /**
+     * Fills in the cells of observations "from" and up, i.e. rows from .. size-1 entirely and columns from .. size-1
+     * of the rows before them, for the bivariate distribution (x, y)
+     */
+    void fillFrom(int from, double[] x, double[] y, boolean parallelize) {
+        KernelExecutor.forEach(parallelize, 0, size, size, (lo, hi) -> {
+            for (int i = lo; i < hi; i++) fillRow(i, i < from ? from : 0, x, y);
+        });
+    }
+
+    private void fillRows(double[] x, double[] y, boolean parallelize) {
+        // Each row is written by exactly one task
+        KernelExecutor.forEach(parallelize, 0, size, size, (lo, hi) -> {
+            for (int i = lo; i < hi; i++) fillRow(i, 0, x, y);
+        });
+    }
+
+    private void fillRow(int i, int from, double[] x, double[] y) {
+        // Every cell is written, zeros included, so that a reused buffer holds no stale cells
+        ConcordanceKernels.INSTANCE.signs(x, y, i, from, size, page(i), offset(i) + from);
+    }
+
+    /**
+     * The concordance of observations i and j of the bivariate distribution (x, y). The cell is symmetric: (i,j) and
+     * (j,i) are equal.
+     * <p>
+     * The cell is the product of the signs of the two comparisons, not the sign of the product of the two
+     * differences, which can underflow to 0 for tiny but distinct values.
+     */
+    static short cell(double[] x, double[] y, int i, int j) {
+        return (short) (compare(x[i], x[j]) * compare(y[i], y[j]));
+    }
+
+    /**
+     * The sign of a - b, decided by comparing the values themselves. Like {@link Ranks}, a NaN is neither above nor
+     * below anything and -0.0 equals 0.0, so that the cells agree with the counts computed from ranks
+     * ({@link KendallCounts}).
+     */
+    static int compare(double a, double b) {
+        return a > b ? 1 : (a < b ? -1 : 0);
+    }
+
+    private short[] page(int i) {
+        return flat != null ? flat : pages[i / rowsPerPage];
+    }
+
+    private int offset(int i) {
+        return flat != null ? i * stride : (i % rowsPerPage) * stride;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public short v(int i, int j) {
+        if (flat != null) return flat[i * stride + j];
+        return pages[i / rowsPerPage][(i % rowsPerPage) * stride + j];
+    }
+
+    @Override
+    public void set(int i, int j, int value) {
+        page(i)[offset(i) + j] = (short) value;
+    }
+}
@@ -12,28 +12,31 @@ import java.util.Vector;
  */
 public class FastBCS {
   final static boolean DEBUG = false;
-  static int lastTieReset = Integer.MIN_VALUE;
-  static Comparator comparator = Collections.reverseOrder();
+  static final Comparator<Integer> comparator = Collections.reverseOrder();
 
   // Create an ordered concordance matrix using FastBCS
   public static int[] getPi(double[] x, double[] y) {
+    return getPi(x, y, ConcordanceStorage.DENSE);
+  }
+
+  // Create an ordered concordance matrix using FastBCS, storing its cells as described by "storage"
+  public static int[] getPi(double[] x, double[] y, ConcordanceStorage storage) {
     final int N = x.length;
-    ConcordanceMatrix cm = ConcordanceMatrix.create(x, y);
-    int[] pi = cm.pi();
+    ConcordanceMatrix cm = ConcordanceMatrix.create(x, y, storage);
 
     Vector<Integer>[] ties = (Vector<Integer>[]) new Vector[N];
     int i = N - 1;
-    lastTieReset = i;
+    int lastTieReset = i;
     boolean permute = true;
 
     while (permute) {
       Vector<Integer> tieList = cm.tieList(i);
-      Vector<Integer> ti = previousTies(ties, pi[i], i);
+      Vector<Integer> ti = previousTies(ties, cm.piVal(i), i, lastTieReset);
 
       // The algorithm states that in the case of a tie, one is selected randomly. By choosing the first,
       // we eliminate the element of choice.
       Integer mini = tieList.elementAt(0);
-      transposeWhereValuesEqual(pi[i], mini, pi, cm);
+      cm.transposeValues(cm.piVal(i), mini);
       if (tieList.size() > 1) ties[i] = tieList;
 
       boolean swap = false;
@@ -65,7 +68,7 @@ any:
               }
 
               if (allGreaterThanOrEqual && anyGreaterThan) {
-                transposeWhereValuesEqual(pi[i], pi[k], pi, cm);
+                cm.transposeValues(cm.piVal(i), cm.piVal(k));
                 i = k - 1;
                 lastTieReset = i;
                 swap = true;
@@ -90,40 +93,15 @@ any:
     return cm.pi();
   }
 
-  /**
-   * Transposes values in the permutation index. This is a by-value transposition where k and l define the two
-   * values in pi that will be swapped. This is likely NOT an ideal implementation and was created purely to
-   * bring this class into parity with taupath_rex.R
-   *
-   * @param k  The first value for which to search
-   * @param l  The second value for which to search
-   * @param pi The permutation index in which transpositions will occur
-   */
-  private static void transposeWhereValuesEqual(int k, int l, int[] pi, ConcordanceMatrix cm) {
-    int indexK = 0;
-    int indexL = 0;
-
-    // Find in the indices of k and l in pi
-    for (int i = 0; i < pi.length; i++) {
-      if (pi[i] == k) indexK = i;
-      if (pi[i] == l) indexL = i;
-    }
-
-    // Transpose the values
-    int temp = pi[indexK];
-    pi[indexK] = pi[indexL];
-    pi[indexL] = temp;
-    cm.pi(pi);
-  }
-
   /**
    * Resolves the naturally ordered indexes of the columns in the tie list and returns the maximum column
    *
    * todo eliminate use of Vector
    * @param ties The previous tie list to examine for "rowId"
+   * @param lastTieReset The stage of the last forward swap; ties above it are ignored
    * @return The largest ID
    */
-  public static Vector<Integer> previousTies(Vector<Integer>[] ties, int colId, int currentStage) {
+  public static Vector<Integer> previousTies(Vector<Integer>[] ties, int colId, int currentStage, int lastTieReset) {
     Vector<Integer> previousTies = new Vector<>();
 
     for (int i = currentStage+1; i <= lastTieReset; i++) {
@@ -1,22 +1,71 @@
 package tktp;
 
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.Vector;
+import java.util.function.IntUnaryOperator;
 import java.util.stream.IntStream;
 
 /**
  * This class provides a native Java implementation of Joe's TopKTaupath algorithm
+ * <p>
+ * The static getPi methods build everything they need on each call and share no state, so they are safe to call
+ * from any number of threads. For many searches in a row, an instance of FastBCS2 holds its configuration and a
+ * workspace (the concordance matrix buffer, the tie history and scratch arrays, sized to the largest N seen) that
+ * is reused from one search to the next. An instance is not thread-safe; use one per thread.
  *
  * @author Adriano Caloiaro
  * @version 6/30/14
  */
 public class FastBCS2 {
     final static boolean DEBUG = false;
-    static int lastTieReset = Integer.MIN_VALUE;
-    static Comparator comparator = Collections.reverseOrder();
-    static private boolean PARALLELIZE = true;
+
+    private final boolean parallelize;
+    private final ConcordanceStorage storage;
+    private final StoppingRule stop;
+
+    // Workspace reused from search to search
+    private final TieIndex ties = new TieIndex();
+    private int[] tieList = new int[0];
+    private int[] ti = new int[0];
+    private ConcordanceMatrixFBCS2 matrix;
+
+    // Instrumentation, all null or 0 unless a listener is set
+    private SearchListener listener;
+    private long constructionNanos;
+
+    /**
+     * Creates a sequential engine backed by dense concordance matrices
+     */
+    public FastBCS2() {
+        this(false, ConcordanceStorage.DENSE);
+    }
+
+    /**
+     * @param parallelize Whether the matrix kernels may run in parallel on ranges large enough to pay for it (see
+     *                    {@link KernelExecutor})
+     * @param storage     How the cells of the concordance matrices are stored
+     */
+    public FastBCS2(boolean parallelize, ConcordanceStorage storage) {
+        this(parallelize, storage, StoppingRule.NONE);
+    }
+
+    /**
+     * @param parallelize Whether the matrix kernels may run in parallel on ranges large enough to pay for it (see
+     *                    {@link KernelExecutor})
+     * @param storage     How the cells of the concordance matrices are stored
+     * @param stop        When each search may stop before the remaining observations are fully concordant
+     */
+    public FastBCS2(boolean parallelize, ConcordanceStorage storage, StoppingRule stop) {
+        this.parallelize = parallelize;
+        this.storage = storage;
+        this.stop = stop;
+    }
+
+    /**
+     * Reports this engine's searches to "listener" from now on, or stops reporting them when it is null
+     */
+    public void setListener(SearchListener listener) {
+        this.listener = listener;
+    }
 
     /**
      * ================================================================================================
@@ -24,132 +73,294 @@ public class FastBCS2 {
      * ================================================================================================
      */
     public static ConcordanceMatrixFBCS2 getPi(double[] x, double[] y, boolean parallelize) {
-        PARALLELIZE = parallelize;
-        return getPi(x, y);
+        return getPi(x, y, parallelize, ConcordanceStorage.DENSE);
+    }
+
+    public static ConcordanceMatrixFBCS2 getPi(double[] x, double[] y, boolean parallelize, ConcordanceStorage storage) {
+        return new FastBCS2(parallelize, storage).search(ConcordanceMatrixFBCS2.create(x, y, parallelize, storage),
+                KendallCounts.of(x, y));
+    }
+
+    /**
+     * Runs a search that may stop early, returning a partially ordered matrix whose tau path is computed down to
+     * {@link ConcordanceMatrixFBCS2#completedStage()}
+     */
+    public static ConcordanceMatrixFBCS2 getPi(double[] x, double[] y, boolean parallelize, ConcordanceStorage storage,
+                                               StoppingRule stop) {
+        return new FastBCS2(parallelize, storage, stop).search(ConcordanceMatrixFBCS2.create(x, y, parallelize,
+                storage), KendallCounts.of(x, y));
     }
 
     // Create an ordered concordance matrix based on the fast backward conditional search algorithm
     public static ConcordanceMatrixFBCS2 getPi(double[] x, double[] y) {
+        // Create the concordance matrix with a naturally ordered permutation, i.e. 0 .. N-1. This is the base
+        // from which all permuted concordance matrices are created.
+        return getPi(x, y, true);
+    }
+
+    /**
+     * Runs the fast backward conditional search on an existing concordance matrix, e.g. one reopened with
+     * {@link ConcordanceMatrixFBCS2#open(java.nio.file.Path, boolean)}. The matrix must still have the naturally ordered
+     * permutation index it was created with; it is permuted in place and returned.
+     */
+    public static ConcordanceMatrixFBCS2 getPi(ConcordanceMatrixFBCS2 cm) {
+        return new FastBCS2(cm.PARALLELIZE, ConcordanceStorage.DENSE).search(cm, null);
+    }
+
+    /**
+     * Runs the fast backward conditional search on (x, y) in this engine's workspace. The concordance matrix buffer
+     * is reused when it can hold the new matrix.
+     *
+     * @return The ordered concordance matrix. It belongs to this engine and is overwritten by its next search; copy
+     * {@link ConcordanceMatrixFBCS2#pi()} and {@link ConcordanceMatrixFBCS2#tauPath} to keep them.
+     */
+    public ConcordanceMatrixFBCS2 search(double[] x, double[] y) {
+        final SearchListener listener = begin();
+        long start = listener != null ? System.nanoTime() : 0L;
+        matrix = ConcordanceMatrixFBCS2.create(x, y, parallelize, storage, matrix);
+        int[] counts = KendallCounts.of(x, y);
+        if (listener != null) constructionNanos = System.nanoTime() - start;
+        return search(matrix, counts, listener);
+    }
+
+    /**
+     * Runs the fast backward conditional search on (x, y) given the ranks of y, so that a response searched against
+     * many predictors is ranked only once
+     *
+     * @see #search(double[], double[])
+     */
+    ConcordanceMatrixFBCS2 search(double[] x, double[] y, int[] ry) {
+        return search(x, y, Ranks.of(x), ry);
+    }
+
+    /**
+     * Runs the fast backward conditional search on (x, y) given the ranks of both, e.g. when every variable of a
+     * table is paired with every other
+     */
+    ConcordanceMatrixFBCS2 search(double[] x, double[] y, int[] rx, int[] ry) {
+        final SearchListener listener = begin();
+        long start = listener != null ? System.nanoTime() : 0L;
+        if (storage == ConcordanceStorage.IMPLICIT) {
+            matrix = ConcordanceMatrixFBCS2.create(new ImplicitConcordanceStore(rx, ry), parallelize);
+        } else {
+            matrix = ConcordanceMatrixFBCS2.create(x, y, parallelize, storage, matrix);
+        }
+        int[] counts = KendallCounts.of(rx, ry);
+        if (listener != null) constructionNanos = System.nanoTime() - start;
+        return search(matrix, counts, listener);
+    }
+
+    /**
+     * Runs the fast backward conditional search on the observations ranked rx and ry (see {@link Ranks}), building
+     * the cells from the ranks alone, e.g. for permutation replicates that shuffle ranks computed once
+     *
+     * @see #search(double[], double[])
+     */
+    ConcordanceMatrixFBCS2 search(int[] rx, int[] ry) {
+        final SearchListener listener = begin();
+        long start = listener != null ? System.nanoTime() : 0L;
+        matrix = ConcordanceMatrixFBCS2.create(rx, ry, parallelize, storage, matrix);
+        int[] counts = KendallCounts.of(rx, ry);
+        if (listener != null) constructionNanos = System.nanoTime() - start;
+        return search(matrix, counts, listener);
+    }
+
+    /**
+     * Runs the fast backward conditional search on an existing concordance matrix using this engine's workspace
+     *
+     * @see #getPi(ConcordanceMatrixFBCS2)
+     */
+    public ConcordanceMatrixFBCS2 search(ConcordanceMatrixFBCS2 cm) {
+        return search(cm, null);
+    }
+
+    /**
+     * @param cm     A concordance matrix with a naturally ordered permutation index
+     * @param counts The Kendall counts of the observations (see {@link KendallCounts}), or null to compute the initial
+     *               column sums from the matrix itself
+     */
+    ConcordanceMatrixFBCS2 search(ConcordanceMatrixFBCS2 cm, int[] counts) {
+        return search(cm, counts, begin());
+    }
+
+    /**
+     * The listener that reports the search about to start, or null when it is not reported (see
+     * {@link SearchListener#searchStarted()})
+     */
+    private SearchListener begin() {
+        return listener != null ? listener.searchStarted() : null;
+    }
+
+    private ConcordanceMatrixFBCS2 search(ConcordanceMatrixFBCS2 cm, int[] counts, SearchListener listener) {
         if (DEBUG) System.out.println("Performing fast backward conditional search ");
 
-        final int N = x.length;
+        final int N = cm.size();
         double matrixSum;
-        int[] qValuesi = new int[0];
-        int[] qValuesk;
 
-        // Create the concordance matrix with a naturally ordered permutation, i.e. 0 .. N-1. This is the base
-        // from which all permuted concordance matrices are created.
-        ConcordanceMatrixFBCS2 cm = ConcordanceMatrixFBCS2.create(x, y, PARALLELIZE);
-        int[] pi = cm.pi();
+        // Counters for the listener; the timers below only run when there is one
+        final SearchStats stats = listener != null ? new SearchStats() : null;
+        long start = 0L;
+        long mark = 0L;
+        if (stats != null) {
+            start = System.nanoTime();
+            stats.size = N;
+            stats.constructionNanos = constructionNanos;
+        }
+        constructionNanos = 0L;
 
-        Vector<Integer>[] ties = new Vector[N];
+        // Tie history, and buffers for the current stage's tie list and the previous ties of its observation
+        ties.reset(N);
+        if (tieList.length < N) {
+            tieList = new int[N];
+            ti = new int[N];
+        }
 
         int stage = N - 1;
-        lastTieReset = stage;
-
-        // Calculate the column sums for the entire concordance matrix
-        IntStream sumStream = IntStream.range(0, N);
-        matrixSum = (PARALLELIZE) ? (double) sumStream.parallel().map(cm.columnSums(stage)).sum() :
-                (double) sumStream.map(cm.columnSums(stage)).sum();
+        int forwardSwaps = 0;
+
+        // Calculate the column sums for the entire concordance matrix, in O(N log N) from the Kendall counts when they
+        // are known. The total is accumulated as a long since it exceeds an int once N passes 46340.
+        if (stats != null) mark = System.nanoTime();
+        if (counts != null) {
+            matrixSum = (double) cm.initColumnSums(counts);
+        } else {
+            IntUnaryOperator columnSums = cm.columnSums(stage);
+            matrixSum = (double) KernelExecutor.sum(parallelize, 0, N, N, (from, to) -> {
+                long sum = 0;
+                for (int j = from; j < to; j++) sum += columnSums.applyAsInt(j);
+                return sum;
+            });
+        }
+        if (stats != null) stats.columnSumNanos += System.nanoTime() - mark;
 
         // Initialize the first Taupath score
         IntStream.rangeClosed(0, stage).forEach(k -> cm.tauPath[k] = 1.0);
-        cm.tauPath[stage] = (matrixSum / (N * (N - 1)));
+        cm.tauPath[stage] = (matrixSum / ((double) N * (N - 1)));
 
         // Loops until the concordance matrix achieves full concordance
-        while (matrixSum != (stage * (stage + 1))) {
+        while (matrixSum != ((double) stage * (stage + 1))) {
             if (DEBUG) System.out.format("\n===============\ni=%s\n", stage);
 
-            // Set the permutation index on cm
-            cm.permute(pi);
+            if (stop.reached(stage, cm.tauPath[stage], forwardSwaps)) {
+                cm.truncate(stage);
+                break;
+            }
 
             // The algorithm states that in the case of ties, a tie is selected randomly. By choosing the first,
             // we eliminate the element of choice and introduce determinism.
-            Vector<Integer> tieList = cm.tieList(stage);
-            Vector<Integer> ti = previousTies(ties, pi[stage], stage);
+            if (stats != null) mark = System.nanoTime();
+            int tieCount = cm.tieList(stage, tieList);
+            int tiCount = ties.previous(cm.piVal(stage), stage, ti);
+            if (stats != null) {
+                stats.tieCheckNanos += System.nanoTime() - mark;
+                stats.stages++;
+                if (tieCount > 1) {
+                    stats.tieLists++;
+                    stats.tieListMembers += tieCount;
+                    stats.maxTieList = Math.max(stats.maxTieList, tieCount);
+                }
+                listener.stage(stage, tieCount, cm.tauPath[stage]);
+            }
 
-            int mini = tieList.firstElement();
+            int mini = tieList[0];
 
             // Retain this tie list for future analysis when there is more than one
-            if (tieList.size() > 1) ties[stage] = tieList;
+            if (tieCount > 1) ties.record(stage, tieList, tieCount);
 
-            if (DEBUG) System.out.format("Transposing: i<%s> <-> %s %n", pi[stage], mini);
-            permuteWhereValuesEqual(pi[stage], mini, pi, cm);
+            if (DEBUG) System.out.format("Transposing: i<%s> <-> %s %n", cm.piVal(stage), mini);
+            cm.swapValues(cm.piVal(stage), mini);
 
             // Subtract the least concordant column from the column sum list and return the resulting matrixSum
             // for the next stage: (m^{i-1})
-            matrixSum = cm.subtractFromColSums(stage - 1, pi[stage]);
+            if (stats != null) mark = System.nanoTime();
+            matrixSum = cm.subtractFromColSums(stage - 1, cm.piVal(stage));
+            if (stats != null) {
+                stats.columnSumNanos += System.nanoTime() - mark;
+                mark = System.nanoTime();
+            }
 
             // tie-check: Check if the column at pi[stage] tied with any other columns in a previous stage
             boolean swap = false;
 
-            if (ti.size() > 0) {
-                if (DEBUG) System.out.format("Previous ties: %s\n", ti.toString());
-                int maxTieId = ti.firstElement();
+            if (tiCount > 0) {
+                if (DEBUG) System.out.format("Previous ties: %s\n", Arrays.toString(Arrays.copyOf(ti, tiCount)));
+                int maxTieId = ti[0];
                 if (maxTieId > stage) {
-                    for (int k : ti) {
+                    for (int t = 0; t < tiCount; t++) {
+                        int k = ti[t];
                         if (k > stage) {
                             if (DEBUG) System.out.println("k = " + k);
-                            // Generate the cumulative sums from rows i to k - i, inclusive, for columns i,k.
-                            qValuesi = cm.cumulativeSums(stage, stage, k);
-                            qValuesk = cm.cumulativeSums(k, stage, k);
-
-                            // Test observations "k" and "stage" for stagewise optimality at the current stage
-                            boolean allGreaterThanOrEqual = true;
-                            boolean anyGreaterThan = false;
-                            for (int z = 0; z < k - stage; z++) {
-                                if (qValuesi[z] > qValuesk[z]) allGreaterThanOrEqual = false;
-                                if (qValuesk[z] > qValuesi[z]) anyGreaterThan = true;
-                            }
-
+                            // Test observations "k" and "stage" for stagewise optimality at the current stage by comparing
+                            // the cumulative sums from rows i to k - i, inclusive, for columns i,k.
                             // Forward-swap: It has been determined that some other observation (pi[k]) that tied with
                             // column pi[stage] in a previous stage should be permuted to pi[stage] to ensure a locally
                             // monotone decreasing Taupath
-                            if (allGreaterThanOrEqual && anyGreaterThan) {
-                                if (DEBUG) System.out.format("pi: %s\n", Arrays.toString(pi));
+                            if (stats != null) stats.dominanceChecks++;
+                            if (cm.dominates(stage, k)) {
+                                if (DEBUG) System.out.format("pi: %s\n", Arrays.toString(cm.pi()));
+                                if (stats != null) {
+                                    long now = System.nanoTime();
+                                    stats.tieCheckNanos += now - mark;
+                                    mark = now;
+                                    stats.forwardSwaps++;
+                                    stats.forwardSwapDistance += k - stage;
+                                    stats.maxForwardSwapDistance = Math.max(stats.maxForwardSwapDistance, k - stage);
+                                    listener.forwardSwap(stage, k);
+                                }
 
                                 // Recalculate the column sums between previousStage and k so matrixSum values are correct
                                 // when taupath scores are calculated in the post-permute portion of the algorithm
                                 for (int unacccountedForStage = stage; unacccountedForStage <= k; unacccountedForStage++) {
-                                    matrixSum = cm.addToColSums(unacccountedForStage, pi[unacccountedForStage]);
+                                    matrixSum = cm.addToColSums(unacccountedForStage, cm.piVal(unacccountedForStage));
                                 }
 
                                 // Swap the current stage observation with the previous tie that resulted in the greater Tau(k)
-                                permuteWhereValuesEqual(pi[stage], pi[k], pi, cm);
+                                cm.swapPositions(stage, k);
                                 stage = k - 1;
 
                                 // Reset all ties that occurred prior to the current stage
-                                for (int z = stage; z < N; z++) {
-                                    ties[z] = null;
-                                }
+                                ties.clearFrom(stage);
 
-                                cm.tauPath[k] = matrixSum / (k * (k + 1));
+                                cm.tauPath[k] = matrixSum / ((double) k * (k + 1));
                                 matrixSum = cm.subtractFromColSums(stage, cm.piVal(k));
 
                                 // Now we can calculate Tau(k) for the current stage
-                                if (stage > 0) cm.tauPath[stage] = matrixSum / (stage * (stage + 1));
+                                if (stage > 0) cm.tauPath[stage] = matrixSum / ((double) stage * (stage + 1));
+
+                                if (stats != null) {
+                                    long now = System.nanoTime();
+                                    stats.columnSumNanos += now - mark;
+                                    mark = now;
+                                }
 
                                 if (DEBUG)
-                                    System.out.format("Reset: transpose i<%s> to %s\npi: %s\n", pi[stage], pi[k], Arrays.toString(pi));
+                                    System.out.format("Reset: transpose i<%s> to %s\npi: %s\n", cm.piVal(stage), cm.piVal(k), Arrays.toString(cm.pi()));
 
                                 swap = true;
+                                forwardSwaps++;
                                 break;
                             }
                         }
                     }
                 }
             }// End of: tie-check
+            if (stats != null && !swap) stats.tieCheckNanos += System.nanoTime() - mark;
             // Post-permute
             // Decrement i to the next stage
             if (!swap) {
                 // Calculate the TauPath score for the current stage
-                if (stage > 0) cm.tauPath[stage - 1] = (matrixSum / (stage * (stage - 1)));
+                if (stage > 0) cm.tauPath[stage - 1] = (matrixSum / ((double) stage * (stage - 1)));
 
                 stage--;
             }
 
             if (DEBUG) System.out.printf("Matrix sum: %s %n", matrixSum);
         } // End of: Backward elimination
+
+        if (stats != null) {
+            stats.searchNanos = System.nanoTime() - start;
+            listener.searchFinished(stats);
+        }
         return cm;
     }
 
@@ -160,53 +371,4 @@ public class FastBCS2 {
     public static double[] getTau(ConcordanceMatrixFBCS2 conc) {
         return conc.tauPath;
     }
-
-    /**
-     * Transposes values in the permutation index and column sums. This is a by-value transposition where k and l define the two
-     * values in pi that will be swapped. This is likely NOT an ideal implementation and was created purely to
-     * bring this class into parity with taupath_rex.R
-     *
-     * @param k  The index of the first value for which to search
-     * @param l  The index of the second value for which to search
-     * @param pi The permutation index in which transpositions will occur
-     */
-    private static void permuteWhereValuesEqual(int k, int l, int[] pi, ConcordanceMatrixFBCS2 cm) {
-        int indexK = 0;
-        int indexL = 0;
-
-        // Find in the indices of k and l in pi
-        for (int i = 0; i < pi.length; i++) {
-            if (pi[i] == k) indexK = i;
-            if (pi[i] == l) indexL = i;
-        }
-
-        // Permute the values
-        int temp = pi[indexK];
-        pi[indexK] = pi[indexL];
-        pi[indexL] = temp;
-        cm.pi(pi);
-
-        // Permute the column sums in the column sum vector that correspond with the two columns that were just permuted
-        temp = cm.data[cm.columnSumOffset + indexK];
-        cm.data[cm.columnSumOffset + indexK] = cm.data[cm.columnSumOffset + indexL];
-        cm.data[cm.columnSumOffset + indexL] = (short) temp;
-    }
-
-    /**
-     * Resolves the naturally ordered indexes of the columns in the tie list and returns the maximum column
-     *
-     * @param ties The previous tie list to examine for "rowId"
-     * @return The largest ID
-     */
-    public static Vector<Integer> previousTies(Vector<Integer>[] ties, int colId, int currentStage) {
-        Vector<Integer> previousTies = new Vector<>();
-
-        for (int i = currentStage+1; i <= lastTieReset; i++) {
-            if (ties[i] != null) {
-                if (ties[i].contains(colId)) previousTies.add(i);
-            }
-        }
-        Collections.sort(previousTies, comparator);
-        return previousTies;
-    }
 }
@@ -0,0 +1,72 @@
+package tktp;
+
+/**
+ * Computes each cell on demand from the ranks of x and y instead of storing it. Cell (i,j) is the sign of
+ * (rx[i] - rx[j]) * (ry[i] - ry[j]), which needs O(n) memory rather than O(n^2), at the price of recomputing a cell
+ * every time it is read.
+ * <p>
+ * The cells are fixed by x and y, so {@link #set(int, int, int)} is not supported.
+ */
+final class ImplicitConcordanceStore implements ConcordanceStore {
+    private final int[] rx;
+    private final int[] ry;
+
+    ImplicitConcordanceStore(int[] rx, int[] ry) {
+        if (rx.length != ry.length) throw new IllegalArgumentException("x and y must have the same length");
+        this.rx = rx;
+        this.ry = ry;
+    }
+
+    /**
+     * Ranks x and y once; every later cell read is two integer comparisons
+     */
+    static ImplicitConcordanceStore create(double[] x, double[] y) {
+        return new ImplicitConcordanceStore(Ranks.of(x), Ranks.of(y));
+    }
+
+    @Override
+    public int size() {
+        return rx.length;
+    }
+
+    @Override
+    public short v(int i, int j) {
+        return cell(rx, ry, i, j);
+    }
+
+    /**
+     * The concordance of observations i and j, given the ranks of x and y. It equals
+     * {@link DenseConcordanceStore#cell(double[], double[], int, int)} on the values: ranks keep the order of the
+     * values, and a NaN, ranked {@link Ranks#NAN_RANK}, is concordant with nothing.
+     */
+    static short cell(int[] rx, int[] ry, int i, int j) {
+        int xi = rx[i], xj = rx[j], yi = ry[i], yj = ry[j];
+        if (xi == Ranks.NAN_RANK || xj == Ranks.NAN_RANK || yi == Ranks.NAN_RANK || yj == Ranks.NAN_RANK) return 0;
+        return (short) (Integer.signum(xi - xj) * Integer.signum(yi - yj));
+    }
+
+    @Override
+    public void set(int i, int j, int value) {
+        throw new UnsupportedOperationException("The cells of an implicit concordance matrix are derived from x and y");
+    }
+
+    @Override
+    public int rowSum(int row, long[] mask) {
+        final int xi = rx[row];
+        final int yi = ry[row];
+        if (xi == Ranks.NAN_RANK || yi == Ranks.NAN_RANK) return 0;
+
+        int sum = 0;
+        for (int w = 0; w < mask.length; w++) {
+            long m = mask[w];
+            while (m != 0) {
+                int j = (w << 6) + Long.numberOfTrailingZeros(m);
+                m &= m - 1;
+                if (rx[j] != Ranks.NAN_RANK && ry[j] != Ranks.NAN_RANK) {
+                    sum += Integer.signum(xi - rx[j]) * Integer.signum(yi - ry[j]);
+                }
+            }
+        }
+        return sum;
+    }
+}
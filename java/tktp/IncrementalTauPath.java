@@ -0,0 +1,120 @@
+package tktp;
+
+import java.util.Arrays;
+
+/**
+ * Maintains the tau path of a bivariate distribution that grows as new observations arrive.
+ * <p>
+ * The cells of the concordance matrix are kept between appends in a dense store with spare room. Appending m
+ * observations to n computes only the m new rows and columns, and updates the Kendall counts (the initial column
+ * sums) from those new cells in O(n*m). The fast backward conditional search is then rerun from the natural ordering.
+ * Warm-starting it from the previous permutation would not be equivalent: the new observations shift every column
+ * sum, so the least concordant column, the ties and the forward swaps of each stage all change, from the top stage
+ * down. Rerunning keeps the result identical to {@link FastBCS2#getPi(double[], double[], boolean)} on all of the
+ * observations.
+ * <p>
+ * A single observation can also be revised in place with {@link #update(int, double, double)}, which recomputes its
+ * row and column in O(n).
+ */
+public final class IncrementalTauPath {
+    private final boolean parallelize;
+    private final FastBCS2 engine;
+
+    private int size;
+    private double[] x = new double[0];
+    private double[] y = new double[0];
+    private int[] counts = new int[0];
+    private DenseConcordanceStore store;
+    private ConcordanceMatrixFBCS2 last;
+
+    /**
+     * @param parallelize Whether the matrix kernels run in parallel
+     */
+    public IncrementalTauPath(boolean parallelize) {
+        this.parallelize = parallelize;
+        this.engine = new FastBCS2(parallelize, ConcordanceStorage.DENSE);
+    }
+
+    /**
+     * The number of observations appended so far
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Appends the observations (xs[k], ys[k]) and reorders the whole distribution
+     *
+     * @return The ordered concordance matrix of all observations so far. It is replaced by the next append; copy
+     * {@link ConcordanceMatrixFBCS2#pi()} and {@link ConcordanceMatrixFBCS2#tauPath} to keep them.
+     */
+    public ConcordanceMatrixFBCS2 append(double[] xs, double[] ys) {
+        if (xs.length != ys.length) throw new IllegalArgumentException("x and y must have the same length");
+
+        final int from = size;
+        final int N = size + xs.length;
+        if (x.length < N) {
+            int capacity = Math.max(N, x.length + (x.length >> 1));
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+        System.arraycopy(xs, 0, x, from, xs.length);
+        System.arraycopy(ys, 0, y, from, ys.length);
+        size = N;
+
+        store = store == null ? new DenseConcordanceStore(N) : store.grow(N);
+        store.fillFrom(from, x, y, parallelize);
+
+        // The new rows hold every cell of the new observations, and each of their cells is also the new cell of an
+        // existing observation's column
+        for (int i = from; i < N; i++) counts[i] = 0;
+        for (int i = from; i < N; i++) {
+            int rowSum = 0;
+            for (int j = 0; j < N; j++) {
+                short v = store.v(i, j);
+                rowSum += v;
+                if (j < from) counts[j] += v;
+            }
+            counts[i] = rowSum;
+        }
+
+        return last = engine.search(ConcordanceMatrixFBCS2.create(store, parallelize), counts);
+    }
+
+    /**
+     * Replaces the values of observation "index" and reorders the distribution.
+     * <p>
+     * Only the observation's row and column are recomputed, and the Kendall count of every other observation is
+     * patched by the change in its cell, in O(n). When no cell changes, e.g. when a value is corrected without
+     * changing its order relative to the others, the ordering is unchanged and the search is skipped. Otherwise the
+     * search is rerun from the top: every column sum of the first stage includes the changed cells, so no stage of
+     * the previous search can be assumed to hold.
+     *
+     * @return The ordered concordance matrix of all observations. It is replaced by the next append or update.
+     */
+    public ConcordanceMatrixFBCS2 update(int index, double xi, double yi) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("no observation " + index);
+
+        x[index] = xi;
+        y[index] = yi;
+
+        boolean changed = false;
+        int rowSum = 0;
+        for (int j = 0; j < size; j++) {
+            short v = DenseConcordanceStore.cell(x, y, index, j);
+            short old = store.v(index, j);
+            if (v != old) {
+                store.set(index, j, v);
+                store.set(j, index, v);
+                counts[j] += v - old;
+                changed = true;
+            }
+            rowSum += v;
+        }
+        counts[index] = rowSum;
+
+        if (!changed) return last;
+        return last = engine.search(ConcordanceMatrixFBCS2.create(store, parallelize), counts);
+    }
+}
@@ -0,0 +1,143 @@
+package tktp;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Reports searches as Java Flight Recorder events: one tktp.Search event per search, one tktp.ForwardSwap event per
+ * forward swap and, when explicitly enabled, one tktp.Stage event per stage.
+ * <p>
+ * Which events are enabled is checked once at the start of each search. When no recording has any of them enabled,
+ * the search runs with no instrumentation at all, timers included, and no event is ever built; otherwise only the
+ * enabled events are built. The listener keeps no state and can be shared by any number of engines.
+ */
+public final class JfrSearchListener implements SearchListener {
+    private static final EventType SEARCH = EventType.getEventType(SearchEvent.class);
+    private static final EventType FORWARD_SWAP = EventType.getEventType(ForwardSwapEvent.class);
+    private static final EventType STAGE = EventType.getEventType(StageEvent.class);
+
+    private static final int SEARCHES = 1;
+    private static final int FORWARD_SWAPS = 2;
+    private static final int STAGES = 4;
+
+    // One listener per combination of enabled events, indexed by the bits above
+    private static final JfrSearchListener[] ENABLED = new JfrSearchListener[8];
+
+    static {
+        for (int events = 0; events < ENABLED.length; events++) ENABLED[events] = new JfrSearchListener(events);
+    }
+
+    public static final JfrSearchListener INSTANCE = ENABLED[SEARCHES | FORWARD_SWAPS | STAGES];
+
+    private final int events;
+
+    private JfrSearchListener(int events) {
+        this.events = events;
+    }
+
+    @Override
+    public SearchListener searchStarted() {
+        int events = (SEARCH.isEnabled() ? SEARCHES : 0) | (FORWARD_SWAP.isEnabled() ? FORWARD_SWAPS : 0)
+                | (STAGE.isEnabled() ? STAGES : 0);
+        return events == 0 ? null : ENABLED[events];
+    }
+
+    @Override
+    public void stage(int stage, int tieListSize, double tau) {
+        if ((events & STAGES) == 0) return;
+        StageEvent event = new StageEvent();
+        event.stage = stage;
+        event.tieListSize = tieListSize;
+        event.tau = tau;
+        event.commit();
+    }
+
+    @Override
+    public void forwardSwap(int stage, int k) {
+        if ((events & FORWARD_SWAPS) == 0) return;
+        ForwardSwapEvent event = new ForwardSwapEvent();
+        event.stage = stage;
+        event.k = k;
+        event.commit();
+    }
+
+    @Override
+    public void searchFinished(SearchStats stats) {
+        if ((events & SEARCHES) == 0) return;
+        SearchEvent event = new SearchEvent();
+        event.size = stats.size;
+        event.stages = stats.stages;
+        event.tieLists = stats.tieLists;
+        event.maxTieList = stats.maxTieList;
+        event.forwardSwaps = stats.forwardSwaps;
+        event.maxForwardSwapDistance = stats.maxForwardSwapDistance;
+        event.dominanceChecks = stats.dominanceChecks;
+        event.construction = stats.constructionNanos;
+        event.columnSums = stats.columnSumNanos;
+        event.tieChecks = stats.tieCheckNanos;
+        event.search = stats.searchNanos;
+        event.commit();
+    }
+
+    @Name("tktp.Search")
+    @Label("Tau Path Search")
+    @Category("tktp")
+    @Description("One fast backward conditional search")
+    static final class SearchEvent extends Event {
+        @Label("Observations")
+        int size;
+        @Label("Stages")
+        int stages;
+        @Label("Tie Lists")
+        int tieLists;
+        @Label("Longest Tie List")
+        int maxTieList;
+        @Label("Forward Swaps")
+        int forwardSwaps;
+        @Label("Longest Forward Swap")
+        int maxForwardSwapDistance;
+        @Label("Dominance Checks")
+        long dominanceChecks;
+        @Label("Construction")
+        @Timespan
+        long construction;
+        @Label("Column Sums")
+        @Timespan
+        long columnSums;
+        @Label("Tie Checks")
+        @Timespan
+        long tieChecks;
+        @Label("Search")
+        @Timespan
+        long search;
+    }
+
+    @Name("tktp.ForwardSwap")
+    @Label("Forward Swap")
+    @Category("tktp")
+    static final class ForwardSwapEvent extends Event {
+        @Label("Stage")
+        int stage;
+        @Label("Swapped With")
+        int k;
+    }
+
+    @Name("tktp.Stage")
+    @Label("Search Stage")
+    @Category("tktp")
+    @Enabled(false)
+    static final class StageEvent extends Event {
+        @Label("Stage")
+        int stage;
+        @Label("Tie List Size")
+        int tieListSize;
+        @Label("Tau")
+        double tau;
+    }
+}
@@ -0,0 +1,144 @@
+package tktp;
+
+import java.util.Arrays;
+
+/**
+ * Per-observation Kendall counts: for each observation j, the number of observations concordant with j minus the
+ * number discordant with j. These are exactly the column sums of the full concordance matrix, but are computed in
+ * O(n log n) instead of O(n^2).
+ * <p>
+ * The observations are swept in order of x while a Fenwick tree indexed by the rank of y counts the observations
+ * already swept. Observations that share an x value are queried before any of them is inserted, so ties in x (and,
+ * through the ranks, ties in y) contribute nothing, just as they do in the concordance matrix.
+ */
+public final class KendallCounts {
+
+    private KendallCounts() {
+    }
+
+    /**
+     * Returns the concordant-minus-discordant count of every observation of the bivariate distribution (x, y)
+     *
+     * @param x The first variable
+     * @param y The second variable
+     * @return counts[j] = sum over i of sign(x[i] - x[j]) * sign(y[i] - y[j])
+     */
+    public static int[] of(double[] x, double[] y) {
+        if (x.length != y.length) throw new IllegalArgumentException("x and y must have the same length");
+        return of(Ranks.of(x), Ranks.of(y));
+    }
+
+    /**
+     * Returns the concordant-minus-discordant count of every observation, given the ranks of x and y
+     */
+    static int[] of(int[] rx, int[] ry) {
+        final int N = rx.length;
+        int[] observations = new int[N];
+        for (int i = 0; i < N; i++) observations[i] = i;
+
+        int[] counts = new int[N];
+        of(rx, ry, observations, N, counts);
+        return counts;
+    }
+
+    /**
+     * Computes the concordant-minus-discordant counts of observations[0] .. observations[count-1] within that subset
+     * of observations. counts[k] receives the count of observations[k].
+     */
+    static void of(int[] rx, int[] ry, int[] observations, int count, int[] counts) {
+        int maxX = -1;
+        int maxY = -1;
+        for (int k = 0; k < count; k++) {
+            int obs = observations[k];
+            maxX = Math.max(maxX, rx[obs]);
+            maxY = Math.max(maxY, ry[obs]);
+        }
+
+        // Counting sort of the subset by rank of x; NaN ranks are left out of the sweep entirely
+        int[] start = new int[maxX + 2];
+        for (int k = 0; k < count; k++) {
+            int r = rx[observations[k]];
+            if (r != Ranks.NAN_RANK && ry[observations[k]] != Ranks.NAN_RANK) start[r + 1]++;
+        }
+        for (int r = 0; r <= maxX; r++) start[r + 1] += start[r];
+        final int swept = start[maxX + 1];
+
+        int[] order = new int[swept];
+        int[] next = new int[maxX + 1];
+        System.arraycopy(start, 0, next, 0, maxX + 1);
+        for (int k = 0; k < count; k++) {
+            int obs = observations[k];
+            counts[k] = 0;
+            if (rx[obs] != Ranks.NAN_RANK && ry[obs] != Ranks.NAN_RANK) order[next[rx[obs]]++] = k;
+        }
+
+        int[] tree = new int[maxY + 2];
+
+        // Ascending sweep: count the observations with a smaller x that have a smaller (concordant) or greater
+        // (discordant) y
+        for (int lo = 0; lo < swept; ) {
+            int hi = groupEnd(rx, observations, order, lo, swept);
+            for (int g = lo; g < hi; g++) {
+                int y = ry[observations[order[g]]];
+                int less = prefix(tree, y - 1);
+                int greater = lo - prefix(tree, y);
+                counts[order[g]] += less - greater;
+            }
+            for (int g = lo; g < hi; g++) add(tree, ry[observations[order[g]]]);
+            lo = hi;
+        }
+
+        Arrays.fill(tree, 0);
+
+        // Descending sweep: count the observations with a greater x that have a greater (concordant) or smaller
+        // (discordant) y
+        for (int hi = swept; hi > 0; ) {
+            int lo = groupStart(rx, observations, order, hi);
+            int inserted = swept - hi;
+            for (int g = lo; g < hi; g++) {
+                int y = ry[observations[order[g]]];
+                int less = prefix(tree, y - 1);
+                int greater = inserted - prefix(tree, y);
+                counts[order[g]] += greater - less;
+            }
+            for (int g = lo; g < hi; g++) add(tree, ry[observations[order[g]]]);
+            hi = lo;
+        }
+    }
+
+    /**
+     * The end (exclusive) of the run of equal x values starting at order[lo]
+     */
+    private static int groupEnd(int[] rx, int[] observations, int[] order, int lo, int end) {
+        int r = rx[observations[order[lo]]];
+        int hi = lo + 1;
+        while (hi < end && rx[observations[order[hi]]] == r) hi++;
+        return hi;
+    }
+
+    /**
+     * The start (inclusive) of the run of equal x values ending at order[hi - 1]
+     */
+    private static int groupStart(int[] rx, int[] observations, int[] order, int hi) {
+        int r = rx[observations[order[hi - 1]]];
+        int lo = hi - 1;
+        while (lo > 0 && rx[observations[order[lo - 1]]] == r) lo--;
+        return lo;
+    }
+
+    /**
+     * Adds one to the count of rank r
+     */
+    private static void add(int[] tree, int r) {
+        for (int i = r + 1; i < tree.length; i += i & -i) tree[i]++;
+    }
+
+    /**
+     * The number of inserted ranks less than or equal to r
+     */
+    private static int prefix(int[] tree, int r) {
+        int sum = 0;
+        for (int i = r + 1; i > 0; i -= i & -i) sum += tree[i];
+        return sum;
+    }
+}
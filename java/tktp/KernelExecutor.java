@@ -0,0 +1,111 @@
+package tktp;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Runs the matrix kernels over ranges of rows or columns, in parallel only when the range holds enough work to pay for
+ * it.
+ * <p>
+ * A kernel call passes the cost of one element of its range, in cell reads: 1 for a column sum update, n for a row of
+ * an nXn matrix. Ranges below {@link #THRESHOLD} cell reads run sequentially in the calling thread, however the
+ * matrix was configured: this covers most stages of a search, whose ranges shrink towards zero. Larger ranges are
+ * split into chunks of at least THRESHOLD cell reads, about four per worker, and run on a dedicated fork/join pool
+ * so that they do not compete with unrelated work on the common pool. Each chunk returns a long, and the totals are
+ * combined exactly.
+ * <p>
+ * The threshold defaults to 2^16 cell reads and can be tuned with the system property tktp.parallel.threshold. The
+ * pool size defaults to the number of processors and can be set with the property tktp.parallelism.
+ */
+final class KernelExecutor {
+    static final long THRESHOLD = Math.max(1L, Long.getLong("tktp.parallel.threshold", 1L << 16));
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(Math.max(1,
+            Integer.getInteger("tktp.parallelism", Runtime.getRuntime().availableProcessors())));
+
+    /**
+     * A kernel over the elements from .. to-1 of a range, returning their total
+     */
+    @FunctionalInterface
+    interface RangeSum {
+        long sum(int from, int to);
+    }
+
+    /**
+     * A kernel over the elements from .. to-1 of a range
+     */
+    @FunctionalInterface
+    interface RangeAction {
+        void run(int from, int to);
+    }
+
+    private KernelExecutor() {
+    }
+
+    /**
+     * Runs "kernel" over from .. to-1 and returns the total of its chunks
+     *
+     * @param parallel Whether the range may run in parallel
+     * @param cost     The number of cell reads per element
+     */
+    static long sum(boolean parallel, int from, int to, long cost, RangeSum kernel) {
+        int chunk = parallel ? chunk(to - from, cost) : 0;
+        if (chunk == 0) return kernel.sum(from, to);
+        return POOL.invoke(new Chunk(kernel, from, to, chunk));
+    }
+
+    /**
+     * Runs "kernel" over from .. to-1
+     *
+     * @param parallel Whether the range may run in parallel
+     * @param cost     The number of cell reads per element
+     */
+    static void forEach(boolean parallel, int from, int to, long cost, RangeAction kernel) {
+        sum(parallel, from, to, cost, (lo, hi) -> {
+            kernel.run(lo, hi);
+            return 0L;
+        });
+    }
+
+    /**
+     * The number of elements per chunk of a range of n elements, or 0 when the range should run sequentially
+     */
+    static int chunk(int n, long cost) {
+        final int workers = POOL.getParallelism();
+        if (workers < 2 || n < 2 || (long) n * cost < 2 * THRESHOLD) return 0;
+
+        long minimum = (THRESHOLD + cost - 1) / cost;
+        long balanced = (n + 4L * workers - 1) / (4L * workers);
+        return (int) Math.min(n, Math.max(minimum, balanced));
+    }
+
+    /**
+     * Splits a range in halves until it fits in one chunk
+     */
+    private static final class Chunk extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final RangeSum kernel;
+        private final int from;
+        private final int to;
+        private final int chunk;
+
+        Chunk(RangeSum kernel, int from, int to, int chunk) {
+            this.kernel = kernel;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected Long compute() {
+            if (to - from <= chunk) return kernel.sum(from, to);
+
+            int mid = (from + to) >>> 1;
+            Chunk right = new Chunk(kernel, mid, to, chunk);
+            right.fork();
+            long left = new Chunk(kernel, from, mid, chunk).compute();
+            return left + right.join();
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package tktp;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Stores the cells as bitplanes (see {@link ConcordancePlanes}) in a memory-mapped file, off the Java heap. Paging is
+ * left to the operating system's page cache, so matrices far larger than the heap can be searched.
+ * <p>
+ * File layout (little-endian):
+ * [
+ * [ header      magic, n, words per plane row ],
+ * [ row 1       concordant words 1 .. w, discordant words 1 .. w ],
+ * …
+ * [ row n       concordant words 1 .. w, discordant words 1 .. w ]
+ * ]
+ * Keeping both planes of a row next to each other means a masked row sum reads one contiguous run of the file. The
+ * file is mapped in segments of whole rows since a single mapping cannot exceed 2GB.
+ * <p>
+ * The magic number is written once every row has been written, so a file left behind by an interrupted build is
+ * rejected by {@link #open(Path)}.
+ */
+final class MappedConcordanceStore implements ConcordanceStore {
+    static final long MAGIC = 0x3130_4D43_5054_4B54L; // "TKTPCM01"
+    static final int HEADER_BYTES = 64;
+
+    // The largest number of bytes held by a single mapping
+    static final int MAX_SEGMENT_BYTES = 1 << 30;
+
+    private final int size;
+    private final int words;
+    private final int rowBytes;
+    private final int rowsPerSegment;
+    private final MappedByteBuffer header;
+    private final MappedByteBuffer[] segments;
+
+    // Whether the store lives in a scratch file of its own, which may be refilled
+    private final boolean scratch;
+
+    /**
+     * @param mode READ_ONLY for a reopened file, READ_WRITE for a store being built
+     */
+    private MappedConcordanceStore(FileChannel channel, int size, boolean scratch, FileChannel.MapMode mode)
+            throws IOException {
+        this.size = size;
+        this.scratch = scratch;
+        this.words = ConcordancePlanes.wordsFor(size);
+        this.rowBytes = 2 * words * Long.BYTES;
+        this.rowsPerSegment = Math.max(1, Math.min(size, MAX_SEGMENT_BYTES / Math.max(1, rowBytes)));
+
+        this.header = map(channel, 0, HEADER_BYTES, mode);
+
+        int segmentCount = size == 0 ? 0 : (size + rowsPerSegment - 1) / rowsPerSegment;
+        this.segments = new MappedByteBuffer[segmentCount];
+        for (int s = 0; s < segmentCount; s++) {
+            int rows = Math.min(rowsPerSegment, size - s * rowsPerSegment);
+            long position = HEADER_BYTES + (long) s * rowsPerSegment * rowBytes;
+            segments[s] = map(channel, position, (long) rows * rowBytes, mode);
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long length, FileChannel.MapMode mode)
+            throws IOException {
+        MappedByteBuffer buffer = channel.map(mode, position, length);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * Builds the bitplanes for the bivariate distribution (x, y) in a scratch file. The scratch file is created in the
+     * directory named by the "tktp.scratch.dir" system property, or in the default temporary directory, and is
+     * deleted as soon as it is mapped: its disk space is released once the store is garbage collected and its
+     * mappings are dropped. An engine refills its scratch store in place rather than creating another (see
+     * {@link #fill(double[], double[], boolean)}).
+     */
+    static MappedConcordanceStore create(double[] x, double[] y, boolean parallelize) {
+        MappedConcordanceStore s = scratch(x.length);
+        s.fillRows(x, y, parallelize);
+        return s;
+    }
+
+    /**
+     * Builds the bitplanes for the observations ranked rx and ry in a scratch file, as
+     * {@link #create(double[], double[], boolean)} does for their values
+     */
+    static MappedConcordanceStore create(int[] rx, int[] ry, boolean parallelize) {
+        MappedConcordanceStore s = scratch(rx.length);
+        s.fill(rx, ry, parallelize);
+        return s;
+    }
+
+    // Maps an empty scratch store of the given size, to be filled by the caller
+    private static MappedConcordanceStore scratch(int size) {
+        try {
+            String dir = System.getProperty("tktp.scratch.dir", System.getProperty("java.io.tmpdir"));
+            Path file = Files.createTempFile(Paths.get(dir), "tktp-", ".cm");
+
+            // The file is unlinked when the channel is closed, right after mapping; the mappings keep its pages
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE)) {
+                return new MappedConcordanceStore(channel, size, true, FileChannel.MapMode.READ_WRITE);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Builds the bitplanes for the bivariate distribution (x, y) in "file", replacing its contents
+     */
+    static MappedConcordanceStore create(double[] x, double[] y, boolean parallelize, Path file) {
+        final int N = x.length;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedConcordanceStore s = new MappedConcordanceStore(channel, N, false, FileChannel.MapMode.READ_WRITE);
+            s.fillRows(x, y, parallelize);
+
+            for (MappedByteBuffer segment : s.segments) segment.force();
+            s.header.putInt(8, N);
+            s.header.putInt(12, s.words);
+            s.header.putLong(0, MAGIC);
+            s.header.force();
+
+            return s;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Refills a scratch store in place when the new matrix has the same size. A store mapped from a named file is
+     * never refilled, so that the file keeps the matrix it was created with.
+     */
+    @Override
+    public boolean fill(double[] x, double[] y, boolean parallelize) {
+        if (!scratch || x.length != size) return false;
+        fillRows(x, y, parallelize);
+        return true;
+    }
+
+    /**
+     * Refills a scratch store from ranks, under the same conditions as {@link #fill(double[], double[], boolean)}
+     */
+    @Override
+    public boolean fill(int[] rx, int[] ry, boolean parallelize) {
+        if (!scratch || rx.length != size) return false;
+        KernelExecutor.forEach(parallelize, 0, size, size, (lo, hi) -> {
+            final long[] c = new long[words];
+            final long[] d = new long[words];
+            for (int i = lo; i < hi; i++) {
+                ConcordanceKernels.INSTANCE.signWords(rx, ry, i, size, c, d, 0);
+                putRow(i, c, d);
+            }
+        });
+        return true;
+    }
+
+    private void fillRows(double[] x, double[] y, boolean parallelize) {
+        // Each row owns its region of the file, so rows can be filled independently
+        KernelExecutor.forEach(parallelize, 0, size, size, (lo, hi) -> {
+            for (int i = lo; i < hi; i++) fillRow(i, x, y);
+        });
+    }
+
+    /**
+     * Maps a file previously written by {@link #create(double[], double[], boolean, Path)}. The file is opened and
+     * mapped read-only, so that it can be reopened from a read-only location and a search can never change it; the
+     * cells of the store cannot be set.
+     */
+    static MappedConcordanceStore open(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IllegalArgumentException(file + " is not a concordance matrix file");
+            }
+
+            MappedByteBuffer header = map(channel, 0, HEADER_BYTES, FileChannel.MapMode.READ_ONLY);
+            if (header.getLong(0) != MAGIC) {
+                throw new IllegalArgumentException(file + " is not a complete concordance matrix file");
+            }
+
+            int size = header.getInt(8);
+            if (header.getInt(12) != ConcordancePlanes.wordsFor(size)
+                    || channel.size() < HEADER_BYTES + (long) size * 2 * ConcordancePlanes.wordsFor(size) * Long.BYTES) {
+                throw new IllegalArgumentException(file + " is truncated or corrupt");
+            }
+
+            return new MappedConcordanceStore(channel, size, false, FileChannel.MapMode.READ_ONLY);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void fillRow(int i, double[] x, double[] y) {
+        final long[] c = new long[words];
+        final long[] d = new long[words];
+        ConcordanceKernels.INSTANCE.signWords(x, y, i, size, c, d, 0);
+        putRow(i, c, d);
+    }
+
+    // Writes the concordant and discordant words of row i to its region of the file
+    private void putRow(int i, long[] c, long[] d) {
+        final MappedByteBuffer segment = segments[i / rowsPerSegment];
+        final int rowOffset = (i % rowsPerSegment) * rowBytes;
+        for (int w = 0; w < words; w++) {
+            segment.putLong(rowOffset + w * Long.BYTES, c[w]);
+            segment.putLong(rowOffset + (words + w) * Long.BYTES, d[w]);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public short v(int i, int j) {
+        final MappedByteBuffer segment = segments[i / rowsPerSegment];
+        final int w = (i % rowsPerSegment) * rowBytes + (j >>> 6) * Long.BYTES;
+        final long bit = 1L << j;
+        if ((segment.getLong(w) & bit) != 0) return 1;
+        if ((segment.getLong(w + words * Long.BYTES) & bit) != 0) return -1;
+        return 0;
+    }
+
+    @Override
+    public void set(int i, int j, int value) {
+        if (header.isReadOnly()) throw new UnsupportedOperationException("A reopened concordance matrix is read-only");
+        final MappedByteBuffer segment = segments[i / rowsPerSegment];
+        final int c = (i % rowsPerSegment) * rowBytes + (j >>> 6) * Long.BYTES;
+        final int d = c + words * Long.BYTES;
+        final long bit = 1L << j;
+        segment.putLong(c, value > 0 ? segment.getLong(c) | bit : segment.getLong(c) & ~bit);
+        segment.putLong(d, value < 0 ? segment.getLong(d) | bit : segment.getLong(d) & ~bit);
+    }
+
+    @Override
+    public int rowSum(int row, long[] mask) {
+        final MappedByteBuffer segment = segments[row / rowsPerSegment];
+        final int c = (row % rowsPerSegment) * rowBytes;
+        final int d = c + words * Long.BYTES;
+        int sum = 0;
+        for (int w = 0; w < words; w++) {
+            long m = mask[w];
+            if (m != 0) {
+                sum += Long.bitCount(segment.getLong(c + w * Long.BYTES) & m)
+                        - Long.bitCount(segment.getLong(d + w * Long.BYTES) & m);
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,184 @@
+package tktp;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+
+/**
+ * Screens every pair of variables of a table for monotone association and keeps the K pairs with the best tau path
+ * statistic.
+ * <p>
+ * The ranks of each variable are computed once and shared by all of its pairs. The p(p-1)/2 pairs are tiled into
+ * square blocks of variables, so that a worker runs the pairs of a few variables at a time. The tiles are spread over
+ * a dedicated fork/join pool in which each worker thread keeps its own {@link FastBCS2} engine. Only the K best
+ * results are held, in a bounded heap shared by the workers; the tau path of any other pair is never copied.
+ */
+public final class PairScreen implements AutoCloseable {
+    // The number of variables along each side of a tile
+    static final int TILE = 16;
+
+    /**
+     * A pair of variables with its score and tau path
+     */
+    public static final class Pair {
+        private final int first;
+        private final int second;
+        private final double score;
+        private final TauPath path;
+
+        Pair(int first, int second, double score, TauPath path) {
+            this.first = first;
+            this.second = second;
+            this.score = score;
+            this.path = path;
+        }
+
+        /**
+         * The index of the first variable, searched as x
+         */
+        public int first() {
+            return first;
+        }
+
+        /**
+         * The index of the second variable, searched as y; always greater than first
+         */
+        public int second() {
+            return second;
+        }
+
+        public double score() {
+            return score;
+        }
+
+        public TauPath path() {
+            return path;
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final ThreadLocal<FastBCS2> engines;
+
+    /**
+     * Creates a screen backed by dense concordance matrices, with one worker per available processor
+     */
+    public PairScreen() {
+        this(Runtime.getRuntime().availableProcessors(), ConcordanceStorage.DENSE);
+    }
+
+    /**
+     * @param parallelism The number of pairs searched at once
+     * @param storage     How the cells of the concordance matrices are stored
+     */
+    public PairScreen(int parallelism, ConcordanceStorage storage) {
+        this(parallelism, storage, null);
+    }
+
+    /**
+     * @param parallelism The number of pairs searched at once
+     * @param storage     How the cells of the concordance matrices are stored
+     * @param listener    Receives the instrumentation of every search, from every worker, or null; must be thread-safe
+     */
+    public PairScreen(int parallelism, ConcordanceStorage storage, SearchListener listener) {
+        this.pool = new ForkJoinPool(parallelism);
+        this.engines = ThreadLocal.withInitial(() -> {
+            FastBCS2 engine = new FastBCS2(false, storage);
+            engine.setListener(listener);
+            return engine;
+        });
+    }
+
+    /**
+     * Searches every pair of variables of "table" and returns the k pairs with the highest score
+     *
+     * @param table     table[v] holds the n observations of variable v
+     * @param k         The number of pairs to keep
+     * @param statistic Scores the tau path of each pair
+     * @return At most k pairs, best first; equal scores are ordered by (first, second)
+     */
+    public List<Pair> run(double[][] table, int k, TauPathStatistic statistic) {
+        final int p = table.length;
+        for (int v = 1; v < p; v++) {
+            if (table[v].length != table[0].length) {
+                throw new IllegalArgumentException("variable " + v + " does not have the same length as variable 0");
+            }
+        }
+
+        TopK best = new TopK(k);
+        if (p < 2) return best.toList();
+
+        int[][] ranks = pool.submit(() -> IntStream.range(0, p).parallel()
+                .mapToObj(v -> Ranks.of(table[v]))
+                .toArray(int[][]::new)).join();
+
+        // Tiles (bi, bj) with bi <= bj, numbered row by row
+        final int blocks = (p + TILE - 1) / TILE;
+        int[] tiles = new int[blocks * (blocks + 1) / 2];
+        for (int bi = 0, t = 0; bi < blocks; bi++) {
+            for (int bj = bi; bj < blocks; bj++) tiles[t++] = bi * blocks + bj;
+        }
+
+        pool.invoke(new Tiles(table, ranks, tiles, blocks, 0, tiles.length, statistic, best));
+        return best.toList();
+    }
+
+    /**
+     * Shuts the worker pool down
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * Splits a range of tiles in halves down to single tiles, and runs the pairs of a single tile
+     */
+    private class Tiles extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final double[][] table;
+        private final int[][] ranks;
+        private final int[] tiles;
+        private final int blocks;
+        private final int from;
+        private final int to;
+        private final TauPathStatistic statistic;
+        private final TopK best;
+
+        Tiles(double[][] table, int[][] ranks, int[] tiles, int blocks, int from, int to, TauPathStatistic statistic,
+              TopK best) {
+            this.table = table;
+            this.ranks = ranks;
+            this.tiles = tiles;
+            this.blocks = blocks;
+            this.from = from;
+            this.to = to;
+            this.statistic = statistic;
+            this.best = best;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Tiles(table, ranks, tiles, blocks, from, mid, statistic, best),
+                        new Tiles(table, ranks, tiles, blocks, mid, to, statistic, best));
+                return;
+            }
+
+            final int p = table.length;
+            final int bi = tiles[from] / blocks;
+            final int bj = tiles[from] % blocks;
+            final FastBCS2 engine = engines.get();
+
+            for (int i = bi * TILE; i < Math.min(p, (bi + 1) * TILE); i++) {
+                for (int j = Math.max(i + 1, bj * TILE); j < Math.min(p, (bj + 1) * TILE); j++) {
+                    ConcordanceMatrixFBCS2 cm = engine.search(table[i], table[j], ranks[i], ranks[j]);
+                    double score = statistic.score(cm.tauPath);
+                    if (best.admits(score)) best.offer(new Pair(i, j, score, TauPath.of(cm)));
+                }
+            }
+        }
+    }
+}
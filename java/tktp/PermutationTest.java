@@ -0,0 +1,205 @@
+package tktp;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.IntStream;
+
+/**
+ * Tests the tau path of (x, y) for significance, stage by stage, against the tau paths of (x, y) with y randomly
+ * permuted.
+ * <p>
+ * The p-value of stage k is the share of permutations whose tau at stage k is at least the observed one. x and y are
+ * ranked once. A replicate permutes the ranks of y and builds its concordance matrix from the ranks alone, so nothing
+ * is re-ranked and the values are never read again; the ranks of x are shared by every replicate. Replicates run in
+ * batches on a dedicated fork/join pool, and each worker reuses one engine, whose matrix buffers are refilled in place,
+ * and one set of buffers. The observed search runs on an engine of its own, which is dropped once it is done.
+ * <p>
+ * Each replicate draws its permutation from its own {@link SplittableRandom}, split from the seed in replicate order.
+ * Batch results are also applied in replicate order. The outcome therefore depends only on the seed, never on the
+ * number of workers or on scheduling.
+ * <p>
+ * A stage stops counting once it is decided in the sense of Besag and Clifford's sequential Monte Carlo test (1991):
+ * after h permutations have reached its observed tau, its p-value is h / r, r being the number of replicates drawn so
+ * far. A stage that never reaches h gets the usual (1 + exceedances) / (1 + replicates). The test ends when every stage
+ * is decided or the replicates run out. Associations that are clearly not significant are settled after a few dozen
+ * permutations.
+ * <p>
+ * There is no matching early stop for significant stages: a stage whose p-value is small runs every replicate
+ * requested. The cost of a test is therefore set by the replicates needed to resolve the smallest p-value of interest,
+ * and a path that is significant at most stages gains nothing from the sequential stop.
+ */
+public final class PermutationTest implements AutoCloseable {
+    // The number of exceedances that decides a stage, after Besag and Clifford
+    static final int DEFAULT_EXCEEDANCES = 10;
+
+    /**
+     * The observed tau path and the p-value of each of its stages
+     */
+    public static final class Result {
+        private final TauPath observed;
+        private final double[] pValues;
+        private final int replicates;
+
+        Result(TauPath observed, double[] pValues, int replicates) {
+            this.observed = observed;
+            this.pValues = pValues;
+            this.replicates = replicates;
+        }
+
+        public TauPath observed() {
+            return observed;
+        }
+
+        /**
+         * The p-value of each stage, NaN where the observed tau is undefined
+         */
+        public double[] pValues() {
+            return pValues.clone();
+        }
+
+        public double pValue(int stage) {
+            return pValues[stage];
+        }
+
+        /**
+         * The number of permutations drawn before every stage was decided, at most the number requested
+         */
+        public int replicates() {
+            return replicates;
+        }
+    }
+
+    /**
+     * A worker's engine and buffers
+     */
+    private static final class Workspace {
+        final FastBCS2 engine;
+        int[] order = new int[0];
+        int[] ry = new int[0];
+
+        Workspace(ConcordanceStorage storage) {
+            engine = new FastBCS2(false, storage);
+        }
+    }
+
+    private final ConcordanceStorage storage;
+    private final ForkJoinPool pool;
+    private final ThreadLocal<Workspace> workspaces;
+    private final int exceedances;
+
+    /**
+     * Creates a test backed by dense concordance matrices, with one worker per available processor
+     */
+    public PermutationTest() {
+        this(Runtime.getRuntime().availableProcessors(), ConcordanceStorage.DENSE, DEFAULT_EXCEEDANCES);
+    }
+
+    /**
+     * @param parallelism The number of replicates run at once
+     * @param storage     How the cells of the concordance matrices are stored
+     * @param exceedances The number of permutations reaching the observed tau that decides a stage
+     */
+    public PermutationTest(int parallelism, ConcordanceStorage storage, int exceedances) {
+        if (exceedances < 1) throw new IllegalArgumentException("exceedances must be at least 1");
+        this.storage = storage;
+        this.pool = new ForkJoinPool(parallelism);
+        this.workspaces = ThreadLocal.withInitial(() -> new Workspace(storage));
+        this.exceedances = exceedances;
+    }
+
+    /**
+     * Runs the test with up to "replicates" permutations of y
+     *
+     * @param seed Seeds the permutations; the same seed gives the same result
+     */
+    public Result run(double[] x, double[] y, int replicates, long seed) {
+        if (x.length != y.length) throw new IllegalArgumentException("x and y must have the same length");
+        final int N = x.length;
+        final int[] rx = Ranks.of(x);
+        final int[] ry = Ranks.of(y);
+
+        // The workspaces belong to the pool's workers; the caller's thread gets an engine for this search only
+        final TauPath observed = TauPath.of(new FastBCS2(false, storage).search(rx, ry));
+        final double[] tau = observed.tauPath();
+
+        // Per stage: the exceedances so far, and the p-value once decided (NaN until then)
+        final int[] counts = new int[N];
+        final double[] pValues = new double[N];
+        Arrays.fill(pValues, Double.NaN);
+        final boolean[] decided = new boolean[N];
+        int undecided = 0;
+        for (int k = 0; k < N; k++) {
+            decided[k] = Double.isNaN(tau[k]);
+            if (!decided[k]) undecided++;
+        }
+
+        final SplittableRandom seeds = new SplittableRandom(seed);
+        final int batch = 4 * pool.getParallelism();
+        final double[][] paths = new double[batch][];
+        final SplittableRandom[] streams = new SplittableRandom[batch];
+
+        int drawn = 0;
+        while (drawn < replicates && undecided > 0) {
+            final int size = Math.min(batch, replicates - drawn);
+            for (int b = 0; b < size; b++) streams[b] = seeds.split();
+
+            pool.submit(() -> IntStream.range(0, size).parallel()
+                    .forEach(b -> paths[b] = replicate(rx, ry, streams[b]))).join();
+
+            // Apply the batch in replicate order, so that stages are decided exactly as in a sequential run
+            for (int b = 0; b < size && undecided > 0; b++) {
+                drawn++;
+                for (int k = 0; k < N; k++) {
+                    if (decided[k] || !(paths[b][k] >= tau[k])) continue;
+                    if (++counts[k] == exceedances) {
+                        pValues[k] = (double) exceedances / drawn;
+                        decided[k] = true;
+                        undecided--;
+                    }
+                }
+            }
+        }
+
+        for (int k = 0; k < N; k++) {
+            if (!decided[k]) pValues[k] = (1.0 + counts[k]) / (1.0 + drawn);
+        }
+        return new Result(observed, pValues, drawn);
+    }
+
+    /**
+     * Runs the search on (x, y) with y permuted by "random", in the calling worker's workspace
+     */
+    private double[] replicate(int[] rx, int[] ry, SplittableRandom random) {
+        final int N = rx.length;
+        // A thread outside the pool that helps with the batch it is waiting for gets no workspace to keep
+        Workspace w = ForkJoinTask.getPool() == pool ? workspaces.get() : new Workspace(storage);
+        if (w.order.length != N) {
+            w.order = new int[N];
+            w.ry = new int[N];
+        }
+
+        // Fisher-Yates shuffle of the observations of y, by their ranks
+        int[] order = w.order;
+        for (int i = 0; i < N; i++) order[i] = i;
+        for (int i = N - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+        for (int i = 0; i < N; i++) w.ry[i] = ry[order[i]];
+
+        ConcordanceMatrixFBCS2 cm = w.engine.search(rx, w.ry);
+        return Arrays.copyOf(cm.tauPath, N);
+    }
+
+    /**
+     * Shuts the worker pool down
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+}
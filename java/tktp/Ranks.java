@@ -0,0 +1,43 @@
+package tktp;
+
+import java.util.Arrays;
+
+/**
+ * Integer ranks of the observations of a variable. Observations with equal values share a rank, so the sign of the
+ * difference of two ranks is the sign of the difference of the two values. This lets concordance be decided with
+ * integer comparisons instead of floating point multiplication.
+ */
+final class Ranks {
+    // The rank given to NaN values. A NaN is neither concordant nor discordant with anything.
+    static final int NAN_RANK = -1;
+
+    private Ranks() {
+    }
+
+    /**
+     * Returns the dense ranks 0 .. d-1 of the values in "v", where d is the number of distinct values
+     */
+    static int[] of(double[] v) {
+        final int N = v.length;
+
+        // -0.0 and 0.0 are equal values, but sort and search as distinct ones, so both are folded into 0.0
+        double[] sorted = new double[N];
+        int count = 0;
+        for (int i = 0; i < N; i++) {
+            if (!Double.isNaN(v[i])) sorted[count++] = v[i] + 0.0;
+        }
+        Arrays.sort(sorted, 0, count);
+
+        // Keep the distinct values only
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || sorted[i] != sorted[distinct - 1]) sorted[distinct++] = sorted[i];
+        }
+
+        int[] ranks = new int[N];
+        for (int i = 0; i < N; i++) {
+            ranks[i] = Double.isNaN(v[i]) ? NAN_RANK : Arrays.binarySearch(sorted, 0, distinct, v[i] + 0.0);
+        }
+        return ranks;
+    }
+}
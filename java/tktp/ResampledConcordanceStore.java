@@ -0,0 +1,38 @@
+package tktp;
+
+/**
+ * A view of a bootstrap resample of the observations of a base concordance matrix. Observation i of the resample is
+ * observation index[i] of the base, so cell (i,j) is base cell (index[i], index[j]). Every cell of the resample
+ * already exists in the base, including those between two draws of the same observation, which fall on the base's
+ * zero diagonal. Building a resample is O(n) instead of O(n^2).
+ * <p>
+ * The view only reads the base, so any number of views can share it across threads. Cells cannot be set.
+ */
+final class ResampledConcordanceStore implements ConcordanceStore {
+    private final ConcordanceStore base;
+    private final int[] index;
+
+    /**
+     * @param base  The cells of the original observations
+     * @param index index[i] is the base observation drawn as observation i of the resample
+     */
+    ResampledConcordanceStore(ConcordanceStore base, int[] index) {
+        this.base = base;
+        this.index = index;
+    }
+
+    @Override
+    public int size() {
+        return index.length;
+    }
+
+    @Override
+    public short v(int i, int j) {
+        return base.v(index[i], index[j]);
+    }
+
+    @Override
+    public void set(int i, int j, int value) {
+        throw new UnsupportedOperationException("The cells of a resample are read from its base matrix");
+    }
+}
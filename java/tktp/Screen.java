@@ -0,0 +1,131 @@
+package tktp;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Screens one response against many predictors, running one fast backward conditional search per predictor.
+ * <p>
+ * The response is ranked once per screen. The searches are spread over a dedicated fork/join pool. Each worker
+ * thread keeps its own {@link FastBCS2} engine, whose workspace is reused from one predictor to the next. Each
+ * search runs sequentially inside its worker: with many predictors, parallelism across predictors scales better than
+ * parallelism within one search.
+ */
+public final class Screen implements AutoCloseable {
+
+    /**
+     * Receives the result of each predictor as soon as its search completes. Results arrive in no particular order
+     * and from the pool's worker threads, but never concurrently, so a listener needs no synchronization of its own.
+     */
+    public interface Listener {
+        void accept(int predictor, TauPath path);
+    }
+
+    private final ForkJoinPool pool;
+    private final ThreadLocal<FastBCS2> engines;
+
+    /**
+     * Creates a screen backed by dense concordance matrices, with one worker per available processor
+     */
+    public Screen() {
+        this(Runtime.getRuntime().availableProcessors(), ConcordanceStorage.DENSE);
+    }
+
+    /**
+     * @param parallelism The number of predictors searched at once
+     * @param storage     How the cells of the concordance matrices are stored
+     */
+    public Screen(int parallelism, ConcordanceStorage storage) {
+        this(parallelism, storage, null);
+    }
+
+    /**
+     * @param parallelism The number of predictors searched at once
+     * @param storage     How the cells of the concordance matrices are stored
+     * @param listener    Receives the instrumentation of every search, from every worker, or null; must be thread-safe
+     */
+    public Screen(int parallelism, ConcordanceStorage storage, SearchListener listener) {
+        this.pool = new ForkJoinPool(parallelism);
+        this.engines = ThreadLocal.withInitial(() -> {
+            FastBCS2 engine = new FastBCS2(false, storage);
+            engine.setListener(listener);
+            return engine;
+        });
+    }
+
+    /**
+     * Searches every predictor against y, passing each result to "listener"
+     *
+     * @param predictors predictors[p] holds the n observations of predictor p
+     * @param y          The n observations of the response
+     */
+    public void run(double[][] predictors, double[] y, Listener listener) {
+        for (int p = 0; p < predictors.length; p++) {
+            if (predictors[p].length != y.length) {
+                throw new IllegalArgumentException("predictor " + p + " does not have the same length as y");
+            }
+        }
+        if (predictors.length == 0) return;
+
+        int[] ry = Ranks.of(y);
+        pool.invoke(new Batch(predictors, y, ry, 0, predictors.length, listener));
+    }
+
+    /**
+     * Searches every predictor against y
+     *
+     * @return result[p] is the tau path of predictor p
+     */
+    public TauPath[] run(double[][] predictors, double[] y) {
+        TauPath[] results = new TauPath[predictors.length];
+        run(predictors, y, (p, path) -> results[p] = path);
+        return results;
+    }
+
+    /**
+     * Shuts the worker pool down
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * Splits a range of predictors in halves down to single predictors, so that idle workers can steal the
+     * remaining halves however uneven the searches turn out to be
+     */
+    private class Batch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final double[][] predictors;
+        private final double[] y;
+        private final int[] ry;
+        private final int from;
+        private final int to;
+        private final Listener listener;
+
+        Batch(double[][] predictors, double[] y, int[] ry, int from, int to, Listener listener) {
+            this.predictors = predictors;
+            this.y = y;
+            this.ry = ry;
+            this.from = from;
+            this.to = to;
+            this.listener = listener;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Batch(predictors, y, ry, from, mid, listener),
+                        new Batch(predictors, y, ry, mid, to, listener));
+                return;
+            }
+
+            TauPath path = TauPath.of(engines.get().search(predictors[from], y, ry));
+            synchronized (listener) {
+                listener.accept(from, path);
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package tktp;
+
+/**
+ * Receives what a {@link FastBCS2} engine does as it searches. Every method has an empty default, so a listener only
+ * implements what it needs.
+ * <p>
+ * An engine without a listener skips all instrumentation, timers included. A listener is called on the thread running
+ * the search; one shared by several engines, e.g. those of a {@link Screen}, must be thread-safe. Each search starts
+ * by asking the listener whether it is to be reported at all (see {@link #searchStarted()}), so that a listener can
+ * switch the instrumentation off without being removed from the engine.
+ *
+ * @see JfrSearchListener
+ */
+public interface SearchListener {
+
+    /**
+     * Called once at the start of each search, before its matrix is built
+     *
+     * @return The listener that receives the rest of this search's callbacks, usually this one, or null to run the
+     * search with no instrumentation at all, timers included
+     */
+    default SearchListener searchStarted() {
+        return this;
+    }
+
+    /**
+     * Called at the start of each stage
+     *
+     * @param stage       The stage
+     * @param tieListSize The number of columns tied for the least concordant column sum
+     * @param tau         The tau of the observations at positions 0 .. stage
+     */
+    default void stage(int stage, int tieListSize, double tau) {
+    }
+
+    /**
+     * Called when the observation at "stage" is swapped forward to position k, sending the search back up to stage
+     * k - 1
+     */
+    default void forwardSwap(int stage, int k) {
+    }
+
+    /**
+     * Called when a search ends, with its counters and timings
+     */
+    default void searchFinished(SearchStats stats) {
+    }
+}
@@ -0,0 +1,119 @@
+package tktp;
+
+/**
+ * The counters and timings of one fast backward conditional search, reported to a {@link SearchListener}. Times are
+ * in nanoseconds. Construction covers building the concordance matrix and the Kendall counts; it is 0 when the search
+ * was given an existing matrix.
+ */
+public final class SearchStats {
+    int size;
+    int stages;
+    int tieLists;
+    long tieListMembers;
+    int maxTieList;
+    int forwardSwaps;
+    long forwardSwapDistance;
+    int maxForwardSwapDistance;
+    long dominanceChecks;
+    long constructionNanos;
+    long columnSumNanos;
+    long tieCheckNanos;
+    long searchNanos;
+
+    SearchStats() {
+    }
+
+    /**
+     * The number of observations
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The number of stages visited, counting a stage again when a forward swap sends the search back to it
+     */
+    public int stages() {
+        return stages;
+    }
+
+    /**
+     * The number of stages at which more than one column tied for the least concordant column sum
+     */
+    public int tieLists() {
+        return tieLists;
+    }
+
+    /**
+     * The total size of those tie lists
+     */
+    public long tieListMembers() {
+        return tieListMembers;
+    }
+
+    /**
+     * The size of the longest tie list
+     */
+    public int maxTieList() {
+        return maxTieList;
+    }
+
+    public int forwardSwaps() {
+        return forwardSwaps;
+    }
+
+    /**
+     * The total number of stages the forward swaps jumped back up
+     */
+    public long forwardSwapDistance() {
+        return forwardSwapDistance;
+    }
+
+    /**
+     * The longest jump of a forward swap
+     */
+    public int maxForwardSwapDistance() {
+        return maxForwardSwapDistance;
+    }
+
+    /**
+     * The number of stagewise dominance tests between a stage and an earlier tie
+     */
+    public long dominanceChecks() {
+        return dominanceChecks;
+    }
+
+    public long constructionNanos() {
+        return constructionNanos;
+    }
+
+    /**
+     * Time spent computing and updating column sums
+     */
+    public long columnSumNanos() {
+        return columnSumNanos;
+    }
+
+    /**
+     * Time spent selecting tie lists and testing earlier ties for a forward swap
+     */
+    public long tieCheckNanos() {
+        return tieCheckNanos;
+    }
+
+    /**
+     * Time spent in the search, construction excluded
+     */
+    public long searchNanos() {
+        return searchNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n=%d stages=%d tieLists=%d (members=%d, max=%d) forwardSwaps=%d (distance=%d, max=%d) "
+                        + "dominanceChecks=%d construction=%.3fms columnSums=%.3fms tieChecks=%.3fms search=%.3fms",
+                size, stages, tieLists, tieListMembers, maxTieList, forwardSwaps, forwardSwapDistance,
+                maxForwardSwapDistance, dominanceChecks, constructionNanos / 1e6, columnSumNanos / 1e6,
+                tieCheckNanos / 1e6, searchNanos / 1e6);
+    }
+}
@@ -0,0 +1,127 @@
+package tktp;
+
+/**
+ * Maintains the tau path of the last W observations of a stream.
+ * <p>
+ * The concordance cells are kept in a circular buffer of W slots. Each new observation takes the slot of the oldest
+ * one: only that slot's row and column are recomputed, and the Kendall counts (the initial column sums) of the other
+ * observations are adjusted by the cells that changed, in O(W) per observation. The search then reads the buffer
+ * through a rotated view, oldest observation first. Its result is therefore indexed by position in the window, and is
+ * the same as a fresh {@link FastBCS2#getPi(double[], double[], boolean)} on the window.
+ * <p>
+ * The search is rerun from the chronological ordering rather than from the previous window's permutation. A backward
+ * search does not refine the ordering it starts from. It recomputes every stage from the column sums, and the
+ * starting permutation only decides which of several tied columns is taken first. A warm start would save no work,
+ * and it would make the result depend on the history of the stream.
+ */
+public final class SlidingTauPath {
+    private final int window;
+    private final boolean parallelize;
+    private final FastBCS2 engine;
+
+    private final double[] x;
+    private final double[] y;
+    private final DenseConcordanceStore slots;
+
+    // Kendall counts by slot, and the same counts by position in the window
+    private final int[] slotCounts;
+    private final int[] counts;
+
+    private final Rotation view;
+
+    /**
+     * @param window      The number of most recent observations to keep
+     * @param parallelize Whether the matrix kernels run in parallel
+     */
+    public SlidingTauPath(int window, boolean parallelize) {
+        if (window < 1) throw new IllegalArgumentException("window must be at least 1");
+        this.window = window;
+        this.parallelize = parallelize;
+        this.engine = new FastBCS2(parallelize, ConcordanceStorage.DENSE);
+        this.x = new double[window];
+        this.y = new double[window];
+        this.slots = new DenseConcordanceStore(window);
+        this.slotCounts = new int[window];
+        this.counts = new int[window];
+        this.view = new Rotation(slots, window);
+    }
+
+    /**
+     * The number of observations in the window; less than the window size until that many have been added
+     */
+    public int size() {
+        return view.size;
+    }
+
+    /**
+     * Adds an observation, evicting the oldest one once the window is full, and reorders the window
+     *
+     * @return The ordered concordance matrix of the window, indexed by position in the window (0 being the oldest
+     * observation). It is replaced by the next call; copy {@link ConcordanceMatrixFBCS2#pi()} and
+     * {@link ConcordanceMatrixFBCS2#tauPath} to keep them.
+     */
+    public ConcordanceMatrixFBCS2 add(double xi, double yi) {
+        final int s;
+        if (view.size < window) {
+            s = view.size++;
+        } else {
+            s = view.head;
+            view.head = s + 1 == window ? 0 : s + 1;
+
+            // Evict: take the oldest observation's cells out of the other observations' counts
+            for (int t = 0; t < window; t++) slotCounts[t] -= slots.v(s, t);
+        }
+
+        x[s] = xi;
+        y[s] = yi;
+
+        // Insert: the new observation's row and column, which are the same cells
+        int rowSum = 0;
+        for (int t = 0; t < view.size; t++) {
+            short v = DenseConcordanceStore.cell(x, y, s, t);
+            slots.set(s, t, v);
+            slots.set(t, s, v);
+            if (t != s) slotCounts[t] += v;
+            rowSum += v;
+        }
+        slotCounts[s] = rowSum;
+
+        for (int i = 0; i < view.size; i++) counts[i] = slotCounts[view.slot(i)];
+        return engine.search(ConcordanceMatrixFBCS2.create(view, parallelize), counts);
+    }
+
+    /**
+     * The slots of the circular buffer in chronological order, starting at the oldest observation
+     */
+    private static final class Rotation implements ConcordanceStore {
+        private final DenseConcordanceStore slots;
+        private final int window;
+        private int head;
+        private int size;
+
+        Rotation(DenseConcordanceStore slots, int window) {
+            this.slots = slots;
+            this.window = window;
+        }
+
+        int slot(int i) {
+            int s = head + i;
+            return s >= window ? s - window : s;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public short v(int i, int j) {
+            return slots.v(slot(i), slot(j));
+        }
+
+        @Override
+        public void set(int i, int j, int value) {
+            slots.set(slot(i), slot(j), value);
+        }
+    }
+}
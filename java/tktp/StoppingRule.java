@@ -0,0 +1,65 @@
+package tktp;
+
+/**
+ * Tells a fast backward conditional search when it may stop before the remaining observations are fully concordant.
+ * The search stops at the first stage where any of the configured limits is met:
+ * <ul>
+ * <li>the search has come down to a target stage,</li>
+ * <li>the tau of the current stage has risen to a threshold, or</li>
+ * <li>the search has made a given number of forward swaps.</li>
+ * </ul>
+ * Rules are immutable and built from {@link #NONE}, e.g. {@code StoppingRule.NONE.stage(50).tau(0.8)}.
+ */
+public final class StoppingRule {
+    /**
+     * Never stops early; the search runs until the remaining observations are fully concordant
+     */
+    public static final StoppingRule NONE = new StoppingRule(-1, Double.POSITIVE_INFINITY, Integer.MAX_VALUE);
+
+    private final int stage;
+    private final double tau;
+    private final int forwardSwaps;
+
+    private StoppingRule(int stage, double tau, int forwardSwaps) {
+        this.stage = stage;
+        this.tau = tau;
+        this.forwardSwaps = forwardSwaps;
+    }
+
+    /**
+     * Stops once the search has come down to "stage", so that the tau path is computed for stages "stage" and above
+     */
+    public StoppingRule stage(int stage) {
+        if (stage < 0) throw new IllegalArgumentException("stage must not be negative");
+        return new StoppingRule(stage, tau, forwardSwaps);
+    }
+
+    /**
+     * Stops at the first stage whose tau is at least "tau"
+     */
+    public StoppingRule tau(double tau) {
+        return new StoppingRule(stage, tau, forwardSwaps);
+    }
+
+    /**
+     * Stops once the search has made "forwardSwaps" forward swaps
+     */
+    public StoppingRule forwardSwaps(int forwardSwaps) {
+        if (forwardSwaps < 1) throw new IllegalArgumentException("forwardSwaps must be at least 1");
+        return new StoppingRule(stage, tau, forwardSwaps);
+    }
+
+    /**
+     * Whether a search at "stage", whose tau is "tau" after "swaps" forward swaps, should stop
+     */
+    boolean reached(int stage, double tau, int swaps) {
+        return stage <= this.stage || tau >= this.tau || swaps >= forwardSwaps;
+    }
+
+    /**
+     * Adds this rule to "hash", so that results computed under different rules are told apart
+     */
+    ContentHash update(ContentHash hash) {
+        return hash.update(stage).update(Double.doubleToLongBits(tau)).update(forwardSwaps);
+    }
+}
@@ -0,0 +1,60 @@
+package tktp;
+
+import java.util.Arrays;
+
+/**
+ * The outcome of one fast backward conditional search: the ordering of the observations and the tau path along it.
+ * Unlike the concordance matrix that produced it, a TauPath holds O(n) memory and does not change, so it can be
+ * kept, queued or shared between threads.
+ */
+public final class TauPath {
+    private final int[] pi;
+    private final double[] tauPath;
+
+    TauPath(int[] pi, double[] tauPath) {
+        this.pi = pi;
+        this.tauPath = tauPath;
+    }
+
+    /**
+     * Copies the permutation index and tau path of an ordered concordance matrix
+     */
+    public static TauPath of(ConcordanceMatrixFBCS2 cm) {
+        return new TauPath(cm.pi(), Arrays.copyOf(cm.tauPath, cm.size()));
+    }
+
+    /**
+     * The number of observations
+     */
+    public int size() {
+        return pi.length;
+    }
+
+    /**
+     * The permutation index: pi[i] is the natural index of the observation at position i
+     */
+    public int[] pi() {
+        return pi.clone();
+    }
+
+    /**
+     * The natural index of the observation at position i
+     */
+    public int piVal(int i) {
+        return pi[i];
+    }
+
+    /**
+     * The tau path, indexed by stage
+     */
+    public double[] tauPath() {
+        return tauPath.clone();
+    }
+
+    /**
+     * The tau of the observations at positions 0 .. stage
+     */
+    public double tau(int stage) {
+        return tauPath[stage];
+    }
+}
@@ -0,0 +1,253 @@
+package tktp;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches the tau paths of fast backward conditional searches by the contents of their inputs, so that a pair that
+ * has been searched before is not searched again.
+ * <p>
+ * Each result is keyed by a SHA-256 digest of x, y and the options that change the result: the algorithm and the
+ * stopping rule. How the matrices are stored and whether their kernels run in parallel do not change the result and
+ * are not part of the key. Results are kept in memory, least recently used first out, up to a number of bytes. With
+ * a directory, every result is also written there, one file per key in the format of {@link BinaryTauPathSink}, and
+ * a result evicted from memory is read back from its file; the directory is never pruned.
+ * <p>
+ * A cache may be used from any number of threads; each thread searches with an engine of its own. Two threads that
+ * miss on the same key at the same time both run the search.
+ */
+public final class TauPathCache {
+    // Part of every key, so that a change to the algorithm or to the layout of its results invalidates old entries
+    static final String ALGORITHM = "FastBCS2/1";
+
+    private static final class Key {
+        private final byte[] digest;
+        private final int hash;
+
+        Key(byte[] digest) {
+            this.digest = digest;
+            this.hash = Arrays.hashCode(digest);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(digest, ((Key) o).digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        String hex() {
+            StringBuilder s = new StringBuilder(2 * digest.length);
+            for (byte b : digest) {
+                s.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return s.toString();
+        }
+    }
+
+    private final long maxBytes;
+    private final Path directory;
+    private final StoppingRule stop;
+    private final ThreadLocal<FastBCS2> engines;
+
+    // In access order, so that the least recently used entry comes first
+    private final LinkedHashMap<Key, TauPath> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a cache held in memory only, in front of sequential searches on dense concordance matrices
+     *
+     * @param maxBytes The most memory the cached results may take up
+     */
+    public TauPathCache(long maxBytes) {
+        this(maxBytes, null, false, ConcordanceStorage.DENSE, StoppingRule.NONE);
+    }
+
+    /**
+     * Creates a cache backed by "directory", in front of sequential searches on dense concordance matrices
+     *
+     * @param maxBytes  The most memory the cached results may take up
+     * @param directory Where results are written and read back, or null to keep them in memory only
+     */
+    public TauPathCache(long maxBytes, Path directory) {
+        this(maxBytes, directory, false, ConcordanceStorage.DENSE, StoppingRule.NONE);
+    }
+
+    /**
+     * @param maxBytes    The most memory the cached results may take up
+     * @param directory   Where results are written and read back, or null to keep them in memory only
+     * @param parallelize Whether the matrix kernels of each search may run in parallel
+     * @param storage     How the cells of the concordance matrices are stored
+     * @param stop        When each search may stop before the remaining observations are fully concordant
+     */
+    public TauPathCache(long maxBytes, Path directory, boolean parallelize, ConcordanceStorage storage,
+                        StoppingRule stop) {
+        if (maxBytes < 0) throw new IllegalArgumentException("maxBytes must not be negative");
+        this.maxBytes = maxBytes;
+        this.directory = directory;
+        this.stop = stop;
+        this.engines = ThreadLocal.withInitial(() -> new FastBCS2(parallelize, storage, stop));
+
+        if (directory != null) {
+            try {
+                Files.createDirectories(directory);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Returns the tau path of (x, y) from the cache, searching for it and caching it when it is not there
+     */
+    public TauPath get(double[] x, double[] y) {
+        if (x.length != y.length) throw new IllegalArgumentException("x and y do not have the same length");
+
+        byte[] xDigest = new ContentHash().update(x).digest();
+        byte[] yDigest = new ContentHash().update(y).digest();
+        Key key = new Key(stop.update(new ContentHash().update(ALGORITHM)).update(xDigest).update(yDigest).digest());
+
+        TauPath path;
+        synchronized (this) {
+            path = entries.get(key);
+        }
+        if (path != null) {
+            hits.increment();
+            return path;
+        }
+
+        if (directory != null) {
+            path = read(key);
+            if (path != null) {
+                diskHits.increment();
+                put(key, path);
+                return path;
+            }
+        }
+
+        misses.increment();
+        path = TauPath.of(engines.get().search(x, y));
+        if (directory != null) write(key, ContentHash.prefix(xDigest), ContentHash.prefix(yDigest), path);
+        put(key, path);
+        return path;
+    }
+
+    private synchronized void put(Key key, TauPath path) {
+        long size = bytes(path);
+        if (size > maxBytes) return;
+
+        TauPath previous = entries.put(key, path);
+        if (previous != null) bytes -= bytes(previous);
+        bytes += size;
+
+        Iterator<Map.Entry<Key, TauPath>> eldest = entries.entrySet().iterator();
+        while (bytes > maxBytes) {
+            bytes -= bytes(eldest.next().getValue());
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    // The approximate memory taken up by a cached result: its two arrays and the objects that hold them
+    private static long bytes(TauPath path) {
+        return 96 + (long) path.size() * (Integer.BYTES + Double.BYTES);
+    }
+
+    private Path file(Key key) {
+        return directory.resolve(key.hex() + ".tkp");
+    }
+
+    // Reads a result back from its file, or returns null when there is none or it cannot be read
+    private TauPath read(Key key) {
+        Path file = file(key);
+        if (!Files.exists(file)) return null;
+        try (TauPathFile results = TauPathFile.open(file)) {
+            return results.count() == 1 ? results.get(0).path() : null;
+        } catch (IllegalArgumentException | UncheckedIOException e) {
+            // A damaged file is a miss, and is replaced by the result of the search
+            return null;
+        }
+    }
+
+    // Writes a result to a temporary file that is then moved into place, so that readers never see part of a file
+    private void write(Key key, long xHash, long yHash, TauPath path) {
+        try {
+            Path temporary = Files.createTempFile(directory, key.hex(), ".tmp");
+            try {
+                try (BinaryTauPathSink sink = new BinaryTauPathSink(temporary, false)) {
+                    sink.write("x", xHash, "y", yHash, path);
+                }
+                Files.move(temporary, file(key), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The number of results found in memory
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * The number of results read back from the directory
+     */
+    public long diskHits() {
+        return diskHits.sum();
+    }
+
+    /**
+     * The number of results that had to be searched for
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * The number of results evicted from memory
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * The number of results held in memory
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * The approximate memory taken up by the results held in memory
+     */
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "TauPathCache{hits=" + hits() + ", diskHits=" + diskHits() + ", misses=" + misses() + ", evictions="
+                + evictions() + ", size=" + size() + ", bytes=" + bytes() + "}";
+    }
+}
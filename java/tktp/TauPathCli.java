@@ -0,0 +1,191 @@
+package tktp;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Computes the tau paths of many pairs of columns of one file in a single run, writing each result as soon as it is
+ * computed, as text (see {@link TextTauPathSink}) or in the binary format of {@link BinaryTauPathSink}.
+ * <p>
+ * Pairs are searched one after the other by a single engine whose workspace is reused, and each column is ranked at
+ * most once. With --against, every other column is screened against one response on a worker per processor. With
+ * --cache, every pair goes through a {@link TauPathCache}, so that pairs whose contents have not changed since an
+ * earlier run are not searched again; the cache's counters are printed to standard error at the end.
+ */
+public final class TauPathCli {
+    private static final String USAGE = String.join("\n",
+            "usage: java -cp tktp.jar tktp.TauPathCli [options] <file>",
+            "  <file>           CSV columns, with an optional header row, or a binary column file",
+            "  --pairs x:y,...  the pairs of columns to search, by name or index (default: 0:1,2:3,...)",
+            "  --against y      search every other column against column y instead",
+            "  --storage S      DENSE, PACKED, MAPPED or IMPLICIT (default: DENSE)",
+            "  --parallel       let the matrix kernels of each search run in parallel",
+            "  --threads n      with --against, the number of columns searched at once (default: processors)",
+            "  --output file    write the results to file instead of standard output",
+            "  --binary         write the results in the binary format; needs --output",
+            "  --float          with --binary, store the taus as floats rather than doubles",
+            "  --cache dir      reuse the results of inputs searched before, kept in dir (see TauPathCache)");
+
+    // The memory given to the results of the current run when --cache is used
+    private static final long CACHE_BYTES = 64L << 20;
+
+    private TauPathCli() {
+    }
+
+    public static void main(String[] a) throws IOException {
+        String input = null;
+        String pairs = null;
+        String against = null;
+        String output = null;
+        String cache = null;
+        ConcordanceStorage storage = ConcordanceStorage.DENSE;
+        boolean parallelize = false;
+        boolean binary = false;
+        boolean floatTaus = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        try {
+            for (int i = 0; i < a.length; i++) {
+                switch (a[i]) {
+                    case "--pairs": pairs = argument(a, ++i); break;
+                    case "--against": against = argument(a, ++i); break;
+                    case "--storage": storage = ConcordanceStorage.valueOf(argument(a, ++i)); break;
+                    case "--parallel": parallelize = true; break;
+                    case "--threads": threads = Integer.parseInt(argument(a, ++i)); break;
+                    case "--output": output = argument(a, ++i); break;
+                    case "--binary": binary = true; break;
+                    case "--float": floatTaus = true; break;
+                    case "--cache": cache = argument(a, ++i); break;
+                    default:
+                        if (a[i].startsWith("--") || input != null) {
+                            throw new IllegalArgumentException("unexpected argument " + a[i]);
+                        }
+                        input = a[i];
+                }
+            }
+            if (input == null) throw new IllegalArgumentException("no input file");
+            if (pairs != null && against != null) {
+                throw new IllegalArgumentException("--pairs and --against cannot be combined");
+            }
+            if (binary && output == null) throw new IllegalArgumentException("--binary needs --output");
+            if (floatTaus && !binary) throw new IllegalArgumentException("--float needs --binary");
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        try {
+            ColumnTable table = ColumnLoader.load(Paths.get(input));
+            try (TauPathSink sink = binary ? new BinaryTauPathSink(Paths.get(output), floatTaus)
+                    : new TextTauPathSink(new OutputStreamWriter(output == null ? System.out
+                    : new FileOutputStream(output), StandardCharsets.UTF_8))) {
+                if (cache != null) {
+                    TauPathCache results = new TauPathCache(CACHE_BYTES, Paths.get(cache), parallelize, storage,
+                            StoppingRule.NONE);
+                    search(table, against != null ? against(table, table.indexOf(against)) : pairs(table, pairs),
+                            results, sink);
+                    System.err.println(results);
+                } else if (against != null) {
+                    screen(table, table.indexOf(against), threads, storage, sink);
+                } else {
+                    search(table, pairs(table, pairs), parallelize, storage, sink);
+                }
+            }
+        } catch (IllegalArgumentException | UncheckedIOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static String argument(String[] a, int i) {
+        if (i >= a.length) throw new IllegalArgumentException(a[i - 1] + " needs a value");
+        return a[i];
+    }
+
+    /**
+     * Parses "x:y,..." into pairs of column indexes, or pairs up consecutive columns when "spec" is null
+     */
+    static int[][] pairs(ColumnTable table, String spec) {
+        List<int[]> pairs = new ArrayList<>();
+        if (spec == null) {
+            if (table.columns() % 2 != 0) {
+                throw new IllegalArgumentException("an odd number of columns cannot be paired up; use --pairs");
+            }
+            for (int c = 0; c < table.columns(); c += 2) pairs.add(new int[]{c, c + 1});
+        } else {
+            for (String pair : spec.split(",")) {
+                String[] xy = pair.split(":");
+                if (xy.length != 2) throw new IllegalArgumentException("not a pair of columns: " + pair);
+                pairs.add(new int[]{table.indexOf(xy[0]), table.indexOf(xy[1])});
+            }
+        }
+        return pairs.toArray(new int[0][]);
+    }
+
+    /**
+     * Pairs every column but y with y
+     */
+    static int[][] against(ColumnTable table, int y) {
+        int[][] pairs = new int[table.columns() - 1][];
+        for (int c = 0, p = 0; c < table.columns(); c++) {
+            if (c != y) pairs[p++] = new int[]{c, y};
+        }
+        return pairs;
+    }
+
+    private static void search(ColumnTable table, int[][] pairs, TauPathCache cache, TauPathSink sink)
+            throws IOException {
+        long[] hashes = hashes(table);
+        for (int[] pair : pairs) {
+            TauPath path = cache.get(table.column(pair[0]), table.column(pair[1]));
+            sink.write(table.name(pair[0]), hashes[pair[0]], table.name(pair[1]), hashes[pair[1]], path);
+        }
+    }
+
+    private static void search(ColumnTable table, int[][] pairs, boolean parallelize, ConcordanceStorage storage,
+                               TauPathSink sink) throws IOException {
+        FastBCS2 engine = new FastBCS2(parallelize, storage);
+        int[][] ranks = new int[table.columns()][];
+        long[] hashes = hashes(table);
+
+        for (int[] pair : pairs) {
+            int x = pair[0];
+            int y = pair[1];
+            if (ranks[x] == null) ranks[x] = Ranks.of(table.column(x));
+            if (ranks[y] == null) ranks[y] = Ranks.of(table.column(y));
+
+            ConcordanceMatrixFBCS2 cm = engine.search(table.column(x), table.column(y), ranks[x], ranks[y]);
+            sink.write(table.name(x), hashes[x], table.name(y), hashes[y], TauPath.of(cm));
+        }
+    }
+
+    private static void screen(ColumnTable table, int y, int threads, ConcordanceStorage storage, TauPathSink sink) {
+        int[][] pairs = against(table, y);
+        double[][] predictors = new double[pairs.length][];
+        for (int p = 0; p < pairs.length; p++) predictors[p] = table.column(pairs[p][0]);
+
+        long[] hashes = hashes(table);
+        try (Screen screen = new Screen(threads, storage)) {
+            screen.run(predictors, table.column(y), (p, path) -> {
+                try {
+                    sink.write(table.name(pairs[p][0]), hashes[pairs[p][0]], table.name(y), hashes[y], path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    private static long[] hashes(ColumnTable table) {
+        long[] hashes = new long[table.columns()];
+        for (int c = 0; c < hashes.length; c++) hashes[c] = ContentHash.of(table.column(c));
+        return hashes;
+    }
+}
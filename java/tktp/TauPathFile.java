@@ -0,0 +1,266 @@
+package tktp;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Random access to the tau paths of a file written by {@link BinaryTauPathSink}. Only the footer is read when the
+ * file is opened; each record is decoded from the mapped file when it is asked for.
+ * <p>
+ * A file that fits in a single mapping is mapped once. Past that size each record is mapped on its own when it is
+ * read. An instance may be read from any number of threads.
+ * <p>
+ * I/O errors are thrown as {@link UncheckedIOException}s, malformed files as {@link IllegalArgumentException}s.
+ */
+public final class TauPathFile implements AutoCloseable {
+    // The largest file mapped as a whole
+    static final int MAX_SEGMENT_BYTES = 1 << 30;
+
+    /**
+     * One decoded record
+     */
+    public static final class Record {
+        private final String x;
+        private final String y;
+        private final long xHash;
+        private final long yHash;
+        private final TauPath path;
+
+        Record(String x, String y, long xHash, long yHash, TauPath path) {
+            this.x = x;
+            this.y = y;
+            this.xHash = xHash;
+            this.yHash = yHash;
+            this.path = path;
+        }
+
+        public String x() {
+            return x;
+        }
+
+        public String y() {
+            return y;
+        }
+
+        /**
+         * The hash of the contents of x, or 0 when it was not recorded
+         */
+        public long xHash() {
+            return xHash;
+        }
+
+        /**
+         * The hash of the contents of y, or 0 when it was not recorded
+         */
+        public long yHash() {
+            return yHash;
+        }
+
+        public TauPath path() {
+            return path;
+        }
+    }
+
+    private final Path file;
+    private final FileChannel channel;
+    private final boolean floatTaus;
+    private final long[] offsets;
+    private final long footer;
+
+    // The whole file, when it fits in a single mapping
+    private final MappedByteBuffer whole;
+
+    private TauPathFile(Path file, FileChannel channel) throws IOException {
+        this.file = file;
+        this.channel = channel;
+
+        final long size = channel.size();
+        if (size < BinaryTauPathSink.HEADER_BYTES + BinaryTauPathSink.TRAILER_BYTES) {
+            throw new IllegalArgumentException(file + " is not a complete tau path file");
+        }
+        MappedByteBuffer header = map(0, BinaryTauPathSink.HEADER_BYTES);
+        MappedByteBuffer trailer = map(size - BinaryTauPathSink.TRAILER_BYTES, BinaryTauPathSink.TRAILER_BYTES);
+        if (header.getLong(0) != BinaryTauPathSink.MAGIC || trailer.getLong(16) != BinaryTauPathSink.MAGIC) {
+            throw new IllegalArgumentException(file + " is not a complete tau path file");
+        }
+        this.floatTaus = (header.getInt(8) & BinaryTauPathSink.FLOAT_TAUS) != 0;
+
+        this.footer = trailer.getLong(0);
+        long count = trailer.getLong(8);
+        if (count < 0 || count > Integer.MAX_VALUE - 8 || footer < BinaryTauPathSink.HEADER_BYTES
+                || footer + count * Long.BYTES + BinaryTauPathSink.TRAILER_BYTES != size) {
+            throw new IllegalArgumentException(file + " is truncated or corrupt");
+        }
+
+        this.offsets = new long[(int) count];
+        for (int from = 0; from < count; from += MAX_SEGMENT_BYTES / Long.BYTES) {
+            int n = (int) Math.min(MAX_SEGMENT_BYTES / Long.BYTES, count - from);
+            map(footer + (long) from * Long.BYTES, (long) n * Long.BYTES).asLongBuffer().get(offsets, from, n);
+        }
+
+        this.whole = size <= MAX_SEGMENT_BYTES ? map(0, size) : null;
+    }
+
+    public static TauPathFile open(Path file) {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            return new TauPathFile(file, channel);
+        } catch (IOException e) {
+            close(channel);
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            close(channel);
+            throw e;
+        }
+    }
+
+    private static void close(FileChannel channel) {
+        try {
+            if (channel != null) channel.close();
+        } catch (IOException e) {
+            // already failing
+        }
+    }
+
+    private MappedByteBuffer map(long position, long length) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * The number of records
+     */
+    public int count() {
+        return offsets.length;
+    }
+
+    /**
+     * Whether the taus are stored as floats
+     */
+    public boolean floatTaus() {
+        return floatTaus;
+    }
+
+    /**
+     * Decodes record r, in the order the records were written
+     */
+    public Record get(int r) {
+        ByteBuffer b = view(r);
+        try {
+            final int N = getVarint(b);
+            long xHash = b.getLong();
+            long yHash = b.getLong();
+            String x = getName(b);
+            String y = getName(b);
+
+            int piEnd = getVarint(b) + b.position();
+            int[] pi = new int[N];
+            for (int i = 0, previous = 0; i < N; i++) {
+                int v = getVarint(b);
+                pi[i] = previous + ((v >>> 1) ^ -(v & 1));
+                previous = pi[i];
+            }
+            if (b.position() != piEnd) throw new IllegalArgumentException(file + " is truncated or corrupt");
+
+            double[] tauPath = new double[N];
+            for (int i = 0; i < N; i++) tauPath[i] = floatTaus ? b.getFloat() : b.getDouble();
+
+            return new Record(x, y, xHash, yHash, new TauPath(pi, tauPath));
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException(file + " is truncated or corrupt", e);
+        }
+    }
+
+    /**
+     * Returns the index of the first record of the pair (x, y), or -1 when there is none. Only the names of the
+     * records are decoded.
+     */
+    public int find(String x, String y) {
+        for (int r = 0; r < offsets.length; r++) {
+            ByteBuffer b = view(r);
+            try {
+                getVarint(b);
+                b.position(b.position() + 2 * Long.BYTES);
+                if (getName(b).equals(x) && getName(b).equals(y)) return r;
+            } catch (IllegalArgumentException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException(file + " is truncated or corrupt", e);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the first record whose inputs have the hashes xHash and yHash, or -1 when there is none
+     */
+    public int find(long xHash, long yHash) {
+        for (int r = 0; r < offsets.length; r++) {
+            ByteBuffer b = view(r);
+            try {
+                getVarint(b);
+                if (b.getLong() == xHash && b.getLong() == yHash) return r;
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException(file + " is truncated or corrupt", e);
+            }
+        }
+        return -1;
+    }
+
+    // The bytes of record r, in a buffer of its own so that concurrent reads do not share a position
+    private ByteBuffer view(int r) {
+        long start = offsets[r];
+        long end = r + 1 < offsets.length ? offsets[r + 1] : footer;
+        if (start < BinaryTauPathSink.HEADER_BYTES || end < start || end - start > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(file + " is truncated or corrupt");
+        }
+
+        if (whole != null) {
+            ByteBuffer b = whole.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            b.position((int) start);
+            b.limit((int) end);
+            return b;
+        }
+        try {
+            return map(start, end - start);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int getVarint(ByteBuffer b) {
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte next = b.get();
+            v |= (next & 0x7F) << shift;
+            if (next >= 0) return v;
+        }
+        throw new IllegalArgumentException("malformed varint");
+    }
+
+    private static String getName(ByteBuffer b) {
+        byte[] name = new byte[getVarint(b)];
+        b.get(name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package tktp;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Receives tau paths one at a time as they are computed, e.g. to stream them to a file, so that the results of many
+ * searches need not be held in memory at once.
+ */
+public interface TauPathSink extends Closeable {
+
+    /**
+     * Writes the tau path of the pair of variables named x and y
+     */
+    void write(String x, String y, TauPath path) throws IOException;
+
+    /**
+     * Writes the tau path of the pair of variables named x and y, along with hashes of their contents (see
+     * {@link ContentHash#of(double[])}). Sinks that do not record the inputs ignore the hashes.
+     */
+    default void write(String x, long xHash, String y, long yHash, TauPath path) throws IOException {
+        write(x, y, path);
+    }
+}
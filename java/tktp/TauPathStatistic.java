@@ -0,0 +1,26 @@
+package tktp;
+
+/**
+ * Summarizes a tau path into a single score, higher meaning a stronger monotone association. Used to rank the
+ * results of a screen.
+ */
+@FunctionalInterface
+public interface TauPathStatistic {
+
+    /**
+     * @param tauPath The tau path of one search, indexed by stage; it must not be modified
+     */
+    double score(double[] tauPath);
+
+    /**
+     * The largest stage k such that the tau path stays at or above "threshold" from stage 1 through stage k, or 0
+     * when stage 1 is already below it. Stage 0, a single observation, has no tau and is skipped.
+     */
+    static TauPathStatistic stagesAbove(double threshold) {
+        return tauPath -> {
+            int k = 1;
+            while (k < tauPath.length && tauPath[k] >= threshold) k++;
+            return k - 1;
+        };
+    }
+}
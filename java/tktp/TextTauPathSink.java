@@ -0,0 +1,42 @@
+package tktp;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes one line of text per tau path: the names of x and y, the permutation index and the tau path, separated by
+ * tabs. The indexes and taus are each separated by commas.
+ */
+public final class TextTauPathSink implements TauPathSink {
+    private final Writer out;
+    private final StringBuilder line = new StringBuilder();
+
+    public TextTauPathSink(Writer out) {
+        this.out = out instanceof BufferedWriter ? out : new BufferedWriter(out, 1 << 16);
+    }
+
+    @Override
+    public void write(String x, String y, TauPath path) throws IOException {
+        final int N = path.size();
+
+        line.setLength(0);
+        line.append(x).append('\t').append(y).append('\t');
+        for (int i = 0; i < N; i++) {
+            if (i > 0) line.append(',');
+            line.append(path.piVal(i));
+        }
+        line.append('\t');
+        for (int i = 0; i < N; i++) {
+            if (i > 0) line.append(',');
+            line.append(path.tau(i));
+        }
+        line.append('\n');
+        out.append(line);
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,124 @@
+package tktp;
+
+import java.util.Arrays;
+
+/**
+ * The tie history of a fast backward conditional search: for each stage, the observations that tied for the least
+ * concordant column when there was more than one.
+ * <p>
+ * The history is indexed both ways. Each stage keeps its members, and each observation keeps the stages at which it
+ * tied, in descending order. "The stages above s at which observation c tied, highest first" is therefore a prefix of
+ * c's list, answered without boxing, sorting or allocation. Arrays only grow when a list outgrows its capacity, and
+ * are reused from stage to stage and from search to search.
+ */
+final class TieIndex {
+    private int[][] stageMembers = new int[0][];
+    private int[] stageCounts = new int[0];
+
+    private int[][] observationStages = new int[0][];
+    private int[] observationCounts = new int[0];
+
+    // The highest stage holding a tie list, or -1 when there are none
+    private int highest = -1;
+
+    /**
+     * Clears the history and makes room for a search over n observations
+     */
+    void reset(int n) {
+        if (stageCounts.length < n) {
+            stageMembers = new int[n][];
+            stageCounts = new int[n];
+            observationStages = new int[n][];
+            observationCounts = new int[n];
+        } else {
+            clearFrom(0);
+            Arrays.fill(observationCounts, 0);
+        }
+        highest = -1;
+    }
+
+    /**
+     * Replaces the tie list of "stage" with observations[0] .. observations[count-1]
+     */
+    void record(int stage, int[] observations, int count) {
+        clear(stage);
+
+        if (stageMembers[stage] == null || stageMembers[stage].length < count) {
+            stageMembers[stage] = new int[Math.max(count, 4)];
+        }
+        System.arraycopy(observations, 0, stageMembers[stage], 0, count);
+        stageCounts[stage] = count;
+
+        for (int t = 0; t < count; t++) insert(observations[t], stage);
+        highest = Math.max(highest, stage);
+    }
+
+    /**
+     * Forgets the tie list of "stage"
+     */
+    void clear(int stage) {
+        int[] members = stageMembers[stage];
+        for (int t = 0; t < stageCounts[stage]; t++) remove(members[t], stage);
+        stageCounts[stage] = 0;
+    }
+
+    /**
+     * Forgets the tie lists of "stage" and every stage above it
+     */
+    void clearFrom(int stage) {
+        for (int z = Math.max(stage, 0); z <= highest; z++) clear(z);
+        if (highest >= stage) highest = stage - 1;
+    }
+
+    /**
+     * Collects the stages above "stage" at which "observation" tied, in descending order
+     *
+     * @param observation The natural index of the observation
+     * @param stage       Only stages strictly above this one are collected
+     * @param stages      Receives the stages; must hold at least as many entries as there are stages
+     * @return The number of stages written
+     */
+    int previous(int observation, int stage, int[] stages) {
+        int[] list = observationStages[observation];
+        int count = 0;
+        while (count < observationCounts[observation] && list[count] > stage) {
+            stages[count] = list[count];
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Adds "stage" to the descending stage list of "observation"
+     */
+    private void insert(int observation, int stage) {
+        int count = observationCounts[observation];
+        int[] list = observationStages[observation];
+        if (list == null || list.length == count) {
+            list = Arrays.copyOf(list == null ? new int[0] : list, Math.max(4, count * 2));
+            observationStages[observation] = list;
+        }
+
+        // Stages are mostly recorded in descending order, so the insertion point is nearly always the end
+        int t = count;
+        while (t > 0 && list[t - 1] < stage) {
+            list[t] = list[t - 1];
+            t--;
+        }
+        list[t] = stage;
+        observationCounts[observation] = count + 1;
+    }
+
+    /**
+     * Removes "stage" from the descending stage list of "observation"
+     */
+    private void remove(int observation, int stage) {
+        int count = observationCounts[observation];
+        int[] list = observationStages[observation];
+        int t = 0;
+        while (t < count && list[t] != stage) t++;
+        if (t == count) return;
+        System.arraycopy(list, t + 1, list, t, count - t - 1);
+        observationCounts[observation] = count - 1;
+    }
+}
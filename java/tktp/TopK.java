@@ -0,0 +1,69 @@
+package tktp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A thread-safe bounded heap keeping the K pairs with the highest scores.
+ * <p>
+ * The heap is ordered worst first, so the pair to evict is always at its head. Once the heap is full, the score of
+ * that pair is published as a volatile cutoff; most candidates score below it and are rejected without taking the
+ * lock, and without the caller copying their tau path. Equal scores are broken by pair order, lower pairs first, so
+ * the result does not depend on the order in which the workers finish.
+ * <p>
+ * A NaN score, e.g. from a statistic of a degenerate pair such as a constant column, ranks nowhere: the pair is
+ * rejected, so that it can neither displace a real score nor become the cutoff.
+ */
+final class TopK {
+    // Best first: higher score, then lower (first, second)
+    static final Comparator<PairScreen.Pair> BEST_FIRST = Comparator
+            .comparingDouble(PairScreen.Pair::score).reversed()
+            .thenComparingInt(PairScreen.Pair::first)
+            .thenComparingInt(PairScreen.Pair::second);
+
+    private final int k;
+    private final PriorityQueue<PairScreen.Pair> heap;
+    private volatile double cutoff = Double.NEGATIVE_INFINITY;
+
+    TopK(int k) {
+        if (k < 1) throw new IllegalArgumentException("k must be at least 1");
+        this.k = k;
+        this.heap = new PriorityQueue<>(k, BEST_FIRST.reversed());
+    }
+
+    /**
+     * Whether a pair with this score could still enter the heap
+     */
+    boolean admits(double score) {
+        // false for NaN
+        return score >= cutoff;
+    }
+
+    /**
+     * Offers a pair, evicting the worst one when the heap is full and the new pair ranks above it
+     */
+    synchronized void offer(PairScreen.Pair pair) {
+        if (Double.isNaN(pair.score())) return;
+        if (heap.size() < k) {
+            heap.add(pair);
+        } else if (BEST_FIRST.compare(pair, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(pair);
+        } else {
+            return;
+        }
+        if (heap.size() == k) cutoff = heap.peek().score();
+    }
+
+    /**
+     * The retained pairs, best first
+     */
+    synchronized List<PairScreen.Pair> toList() {
+        List<PairScreen.Pair> pairs = new ArrayList<>(heap);
+        Collections.sort(pairs, BEST_FIRST);
+        return pairs;
+    }
+}
@@ -1,7 +1,6 @@
 package tktp;
 
-import java.util.stream.*;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 public final class ValidationHelper {
@@ -12,13 +11,8 @@ public final class ValidationHelper {
       System.exit(1);
     }
 
-    double[] x = Stream.of(a[1].split(","))
-      .mapToDouble (e -> new Double(Double.parseDouble(e)))
-      .toArray();
-
-    double[] y = Stream.of(a[2].split(","))
-      .mapToDouble (e -> new Double(Double.parseDouble(e)))
-      .toArray();
+    double[] x = parse(a[1]);
+    double[] y = parse(a[2]);
 
     if (x.length != y.length) {
       System.out.println("Please provide equal-length vectors.");
@@ -27,10 +21,40 @@ public final class ValidationHelper {
 
     int[] pi = null;
     switch (a[0]) {
-      case "FastBCS2": pi = FastBCS2.getPi(x, y).pi();
-      case "FastBCS": pi = FastBCS.getPi(x, y);
+      case "FastBCS2": pi = FastBCS2.getPi(x, y).pi(); break;
+      case "FastBCS": pi = FastBCS.getPi(x, y); break;
+      default:
+        System.out.println("Unknown implementation " + a[0] + ": use FastBCS or FastBCS2");
+        System.exit(1);
     }
 
     System.out.println(Arrays.toString(pi).replace("[", "").replace("]", ""));
   }
+
+  // Parses a comma-separated vector straight into a primitive array. Fields are as strict as they were with
+  // String.split and Double.parseDouble: empty fields and NA are rejected, but trailing empty fields are dropped.
+  private static double[] parse(String vector) {
+    byte[] b = vector.getBytes(StandardCharsets.ISO_8859_1);
+    double[] v = new double[1];
+    int n = 0;
+    int empty = 0; // empty fields not yet followed by a value
+    for (int from = 0, to; from <= b.length; from = to + 1) {
+      for (to = from; to < b.length && b[to] != ','; to++) ;
+      if (to == from && b.length > 0) {
+        empty++;
+        continue;
+      }
+      if (empty > 0) throw new NumberFormatException("empty String");
+      if (n == v.length) v = Arrays.copyOf(v, n * 2);
+      v[n++] = parse(b, from, to);
+    }
+    return Arrays.copyOf(v, n);
+  }
+
+  // ColumnLoader reads empty fields and NA as NaN; only Double.parseDouble's own "NaN" is accepted here
+  private static double parse(byte[] b, int from, int to) {
+    double value = ColumnLoader.parse(b, from, to);
+    if (!Double.isNaN(value)) return value;
+    return Double.parseDouble(new String(b, from, to - from, StandardCharsets.ISO_8859_1));
+  }
 }
@@ -0,0 +1,119 @@
+package tktp;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The kernels of {@link ConcordanceKernels} computed with the incubating Java Vector API, one SIMD register of
+ * observations at a time. A register of cells is decided by four comparison masks (above and below in x and in y),
+ * combined into a concordant and a discordant mask that map directly onto the bits of the concordant and discordant
+ * planes. As in the scalar loops, the values are compared rather than their differences multiplied (see
+ * {@link DenseConcordanceStore#cell(double[], double[], int, int)}). The remainder of each range is left to the
+ * scalar loops.
+ * <p>
+ * Built separately with --add-modules jdk.incubator.vector (make vector), and only loaded when that module is present.
+ */
+final class VectorKernels extends ConcordanceKernels {
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+    // Shorts with as many lanes as DOUBLES, to narrow a register of signs in one conversion; null when no vector
+    // shape is that small (two double lanes would need 32-bit short vectors)
+    private static final VectorSpecies<Short> SHORTS = DOUBLES.length() * Short.SIZE >= 64
+            ? VectorSpecies.of(short.class, VectorShape.forBitSize(DOUBLES.length() * Short.SIZE))
+            : null;
+    private static final DoubleVector ZERO = DoubleVector.zero(DOUBLES);
+
+    @Override
+    String name() {
+        return "vector (" + DOUBLES.length() + " doubles, " + INTS.length() + " ints)";
+    }
+
+    @Override
+    void signs(double[] x, double[] y, int i, int from, int to, short[] dest, int offset) {
+        final int lanes = DOUBLES.length();
+        final DoubleVector xi = DoubleVector.broadcast(DOUBLES, x[i]);
+        final DoubleVector yi = DoubleVector.broadcast(DOUBLES, y[i]);
+
+        int j = from;
+        for (; j + lanes <= to; j += lanes) {
+            DoubleVector xj = DoubleVector.fromArray(DOUBLES, x, j);
+            DoubleVector yj = DoubleVector.fromArray(DOUBLES, y, j);
+            VectorMask<Double> gt = concordant(xi, xj, yi, yj);
+            VectorMask<Double> lt = discordant(xi, xj, yi, yj);
+            if (SHORTS != null) {
+                DoubleVector sign = ZERO.blend(1.0, gt).blend(-1.0, lt);
+                ((ShortVector) sign.convertShape(VectorOperators.D2S, SHORTS, 0)).intoArray(dest, offset + j - from);
+            } else {
+                long g = gt.toLong();
+                long l = lt.toLong();
+                for (int k = 0, o = offset + j - from; k < lanes; k++, o++) {
+                    dest[o] = (short) (((g >>> k) & 1L) - ((l >>> k) & 1L));
+                }
+            }
+        }
+        super.signs(x, y, i, j, to, dest, offset + j - from);
+    }
+
+    @Override
+    void signWords(double[] x, double[] y, int i, int n, long[] concordant, long[] discordant, int offset) {
+        final int lanes = DOUBLES.length();
+        final DoubleVector xi = DoubleVector.broadcast(DOUBLES, x[i]);
+        final DoubleVector yi = DoubleVector.broadcast(DOUBLES, y[i]);
+        final int words = ConcordancePlanes.wordsFor(n);
+
+        for (int w = 0; w < words; w++) {
+            long c = 0L;
+            long d = 0L;
+            final int lo = w << 6;
+            final int hi = Math.min(lo + 64, n);
+            int j = lo;
+            for (; j + lanes <= hi; j += lanes) {
+                DoubleVector xj = DoubleVector.fromArray(DOUBLES, x, j);
+                DoubleVector yj = DoubleVector.fromArray(DOUBLES, y, j);
+                c |= concordant(xi, xj, yi, yj).toLong() << (j - lo);
+                d |= discordant(xi, xj, yi, yj).toLong() << (j - lo);
+            }
+            for (; j < hi; j++) {
+                int cell = DenseConcordanceStore.cell(x, y, i, j);
+                if (cell > 0) c |= 1L << j;
+                else if (cell < 0) d |= 1L << j;
+            }
+            concordant[offset + w] = c;
+            discordant[offset + w] = d;
+        }
+    }
+
+    // The lanes where observation i is above or below observation j in both x and y
+    private static VectorMask<Double> concordant(DoubleVector xi, DoubleVector xj, DoubleVector yi, DoubleVector yj) {
+        return xi.compare(VectorOperators.GT, xj).and(yi.compare(VectorOperators.GT, yj))
+                .or(xi.compare(VectorOperators.LT, xj).and(yi.compare(VectorOperators.LT, yj)));
+    }
+
+    // The lanes where observation i is above observation j in one of x and y and below it in the other
+    private static VectorMask<Double> discordant(DoubleVector xi, DoubleVector xj, DoubleVector yi, DoubleVector yj) {
+        return xi.compare(VectorOperators.GT, xj).and(yi.compare(VectorOperators.LT, yj))
+                .or(xi.compare(VectorOperators.LT, xj).and(yi.compare(VectorOperators.GT, yj)));
+    }
+
+    @Override
+    long accumulate(int[] sums, int[] column, int lo, int hi, boolean subtract) {
+        final int lanes = INTS.length();
+        long total = 0;
+
+        int j = lo;
+        for (; j + lanes <= hi + 1; j += lanes) {
+            IntVector s = IntVector.fromArray(INTS, sums, j);
+            IntVector c = IntVector.fromArray(INTS, column, j);
+            s = subtract ? s.sub(c) : s.add(c);
+            s.intoArray(sums, j);
+            total += s.reduceLanesToLong(VectorOperators.ADD);
+        }
+        return total + super.accumulate(sums, column, j, hi, subtract);
+    }
+}